@@ -0,0 +1,126 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a non-streaming /api/generate response: the tree-based parse the plugins used before (body as a String,
+ * then readTree) against {@link OllamaChat#read(int, java.io.InputStream)} on a byte stream and against
+ * {@link OllamaChat#replyHandler()}, the body handler chat and generate calls actually go through, fed the body
+ * in 16 KB buffers as the HttpClient delivers it. Run with {@code gradle jmh}; the gc profiler reports
+ * gc.alloc.rate.norm (bytes per parse).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplyParseBenchmark {
+
+    private static final HttpResponse.ResponseInfo OK = new HttpResponse.ResponseInfo() {
+        @Override
+        public int statusCode() {
+            return 200;
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.of(Map.of(), (k, v) -> true);
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    };
+
+    /** Generated tokens; the context array holds twice as many ids, as for a short prompt. */
+    @Param({"200", "2000"})
+    public int tokens;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("{\"model\":\"llama3.2\",\"created_at\":\"2026-01-01T00:00:00Z\",\"response\":\"");
+        for (int i = 0; i < tokens; i++) sb.append("token").append(i).append(' ');
+        sb.append("\",\"done\":true,\"context\":[");
+        for (int i = 0; i < 2 * tokens; i++) sb.append(i == 0 ? "" : ",").append(100000 + i);
+        sb.append("],\"total_duration\":123456789,\"load_duration\":456789,\"prompt_eval_count\":26,")
+                .append("\"prompt_eval_duration\":1234567,\"eval_count\":").append(tokens).append(",\"eval_duration\":98765432}");
+        body = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int tree() throws IOException {
+        JsonNode root = OllamaTransport.MAPPER.readTree(new String(body, StandardCharsets.UTF_8));
+        return root.path("response").asText().length() + root.path("context").size();
+    }
+
+    @Benchmark
+    public int stream() throws IOException {
+        OllamaChat.Reply reply = OllamaChat.read(200, new ByteArrayInputStream(body));
+        return reply.content().length() + reply.context().length;
+    }
+
+    @Benchmark
+    public int handler() {
+        HttpResponse.BodySubscriber<OllamaChat.Reply> subscriber = OllamaChat.replyHandler().apply(OK);
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int off = 0; off < body.length; off += 16 * 1024) {
+            buffers.add(ByteBuffer.wrap(body, off, Math.min(16 * 1024, body.length - off)));
+        }
+        subscriber.onNext(buffers);
+        subscriber.onComplete();
+        OllamaChat.Reply reply = subscriber.getBody().toCompletableFuture().join();
+        return reply.content().length() + reply.context().length;
+    }
+}
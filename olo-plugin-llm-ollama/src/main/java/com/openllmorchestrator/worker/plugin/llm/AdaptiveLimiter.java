@@ -0,0 +1,156 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit for one Ollama model that adapts to how the server copes, with a bounded wait queue.
+ * <p>
+ * The limit follows a gradient of latency: each sample is compared with a no-queue baseline (the fastest
+ * sample of the last {@value #WINDOW} to {@code 2 * WINDOW}, so the baseline is re-probed as the workload
+ * changes). For generations the transport samples latency per generated token (see
+ * {@link OllamaTransport.Permit}), so answers of different lengths are comparable and a long answer does not read
+ * as congestion. When requests get slower than {@code tolerance} times the baseline the limit shrinks
+ * proportionally, while latency holds it grows by about sqrt(limit) per update. A dropped request
+ * (timeout, connection error, 429/5xx) halves it. So the limit settles near the point where Ollama's own
+ * queue starts to grow, instead of piling requests on until all of them hit OLLAMA_TIMEOUT_SECONDS.
+ * <p>
+ * Callers over the limit wait in FIFO order; when {@code maxQueue} callers already wait, or the wait exceeds
+ * {@code queueTimeoutNanos}, {@link #acquire} fails fast with {@link RejectedExecutionException}.
+ */
+final class AdaptiveLimiter {
+
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.5;
+    /** Samples per window of the latency baseline. */
+    private static final int WINDOW = 100;
+
+    private final String name;
+    private final double tolerance;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long queueTimeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    /** Lowest latency in the current and in the previous window; their minimum is the no-queue baseline. */
+    private long windowMinNanos = Long.MAX_VALUE;
+    private long previousWindowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+
+    AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance, int maxQueue, long queueTimeoutNanos) {
+        this.name = name;
+        this.tolerance = Math.max(1.0, tolerance);
+        this.minLimit = minLimit;
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        this.maxQueue = maxQueue;
+        this.queueTimeoutNanos = queueTimeoutNanos;
+        this.limit = Math.max(minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * Takes a slot, waiting in the queue while the limit is reached.
+     *
+     * @throws RejectedExecutionException if the queue is full or no slot freed up within the queue timeout
+     */
+    void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return;
+            }
+            if (waiting >= maxQueue) {
+                throw new RejectedExecutionException("Ollama model " + name + " overloaded: " + inFlight
+                        + " in flight (limit " + (int) limit + ") and " + waiting + " queued");
+            }
+            waiting++;
+            try {
+                long nanos = queueTimeoutNanos;
+                while (inFlight >= (int) limit) {
+                    if (nanos <= 0) {
+                        throw new RejectedExecutionException("Ollama model " + name + " overloaded: no slot within "
+                                + TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos) + " ms (limit " + (int) limit + ")");
+                    }
+                    nanos = available.awaitNanos(nanos);
+                }
+                inFlight++;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot taken by {@link #acquire}; {@code rttNanos} is the latency sample (0 for none), {@code dropped}
+     * when the request failed from overload.
+     */
+    void release(long rttNanos, boolean dropped) {
+        lock.lock();
+        try {
+            int before = (int) limit;
+            if (dropped) {
+                limit = Math.max(minLimit, limit * BACKOFF);
+            } else if (rttNanos > 0) {
+                update(rttNanos, inFlight);
+            }
+            inFlight--;
+            if ((int) limit > before) {
+                available.signalAll();
+            } else {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rttNanos, int inFlightAtCompletion) {
+        windowMinNanos = Math.min(windowMinNanos, rttNanos);
+        if (++windowSamples == WINDOW) {
+            previousWindowMinNanos = windowMinNanos;
+            windowMinNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        // Only grow while the limit is actually used; an idle limit says nothing about the server.
+        if (inFlightAtCompletion < limit / 2) {
+            return;
+        }
+        long baseline = Math.min(windowMinNanos, previousWindowMinNanos);
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * baseline / rttNanos));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+
+    int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 digest of some content as four longs, for in-memory maps keyed by content (response cache, request
+ * coalescing, prefix tracking). Kept apart from {@link EmbeddingCache.Key}, whose layout is part of an on-disk format.
+ */
+record ContentKey(long a, long b, long c, long d) {
+
+    /** Digest of the UTF-8 {@code parts}, each followed by a zero byte. */
+    static ContentKey of(String... parts) {
+        return of(null, parts);
+    }
+
+    /** Digest of {@code parent}'s digest bytes (when not null), then the UTF-8 {@code parts}, each followed by a zero byte. */
+    static ContentKey of(ContentKey parent, String... parts) {
+        MessageDigest sha = sha256();
+        if (parent != null) {
+            sha.update(parent.bytes());
+        }
+        for (String part : parts) {
+            sha.update(part.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+        }
+        return digest(sha);
+    }
+
+    /** Digest of the UTF-8 {@code label} and a zero byte, then {@code content} as is. */
+    static ContentKey of(String label, byte[] content) {
+        MessageDigest sha = sha256();
+        sha.update(label.getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+        sha.update(content);
+        return digest(sha);
+    }
+
+    /** The digest as 64 hex digits. */
+    String hex() {
+        return String.format("%016x%016x%016x%016x", a, b, c, d);
+    }
+
+    private byte[] bytes() {
+        return ByteBuffer.allocate(32).putLong(a).putLong(b).putLong(c).putLong(d).array();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ContentKey digest(MessageDigest sha) {
+        ByteBuffer digest = ByteBuffer.wrap(sha.digest());
+        return new ContentKey(digest.getLong(), digest.getLong(), digest.getLong(), digest.getLong());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fits retrieved chunks into a token budget before they go into the RAG prompt, so prompt size and prefill time
+ * stay bounded however much the retriever returns:
+ * <ol>
+ *   <li>chunks are ranked by "score" (highest first; unscored ones keep their order after the scored ones);</li>
+ *   <li>a chunk whose word 5-grams are mostly ({@value #DUPLICATE_OVERLAP} or more) already in the packed text
+ *       is dropped as a duplicate, which also catches the overlap between neighbouring chunks of one file;</li>
+ *   <li>the rest are packed greedily while their estimated tokens fit; a chunk that does not fit is skipped and
+ *       smaller ones after it still get their chance. If even the best chunk does not fit, it is cut to the budget.</li>
+ * </ol>
+ * Tokens are estimated with {@link #estimateTokens}, a one-pass approximation of BPE tokenizers that errs high.
+ * The window of a model is its context_length from POST /api/show, capped at OLLAMA_NUM_CTX (the num_ctx the
+ * Ollama server runs with; it truncates longer prompts whatever the model supports), looked up once per model;
+ * a failed lookup is retried after a minute.
+ */
+final class ContextPacker {
+
+    static final double DUPLICATE_OVERLAP = 0.8;
+    private static final int SHINGLE = 5;
+
+    /** How long a model whose window could not be looked up is served numCtx before /api/show is tried again. */
+    private static final long LOOKUP_RETRY_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final ConcurrentMap<String, Integer> WINDOWS = new ConcurrentHashMap<>();
+    /** System.nanoTime() before which a failed lookup is not repeated, per model. */
+    private static final ConcurrentMap<String, Long> LOOKUP_FAILED = new ConcurrentHashMap<>();
+
+    /** Chunks that made it into the budget, in prompt order, and how many were dropped for each reason. */
+    record Packed(List<Map<String, Object>> chunks, int tokens, int duplicates, int overBudget) {
+    }
+
+    private ContextPacker() {}
+
+    /**
+     * Approximate token count: a run of ASCII letters or digits counts one token per 4 characters (rounded up),
+     * every other non-space character one token, whitespace nothing. Close to Llama/Mistral tokenizers on English
+     * prose and code, somewhat above them on long words, and never needs a vocabulary.
+     */
+    static int estimateTokens(CharSequence text) {
+        int tokens = 0;
+        int run = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                run++;
+                continue;
+            }
+            tokens += (run + 3) / 4;
+            run = 0;
+            if (!Character.isWhitespace(c) && !Character.isLowSurrogate(c)) {
+                tokens++;
+            }
+        }
+        return tokens + (run + 3) / 4;
+    }
+
+    /**
+     * Context window of {@code model} in tokens: min(context_length from /api/show, {@code numCtx}), or
+     * {@code numCtx} when the model cannot be looked up. The lookup bypasses the model and host limits, so it never
+     * queues behind generations. A failed lookup (unknown model, server error, no context_length) is remembered
+     * for a minute, so it does not add a round trip to every call meanwhile.
+     */
+    static int window(String model, int numCtx) {
+        Integer cached = WINDOWS.get(model);
+        if (cached != null) {
+            return Math.min(cached, numCtx);
+        }
+        Long retryAt = LOOKUP_FAILED.get(model);
+        if (retryAt != null && System.nanoTime() - retryAt < 0) {
+            return numCtx;
+        }
+        try {
+            byte[] json = OllamaTransport.MAPPER.writeValueAsBytes(Map.of("model", model));
+            Integer length = OllamaTransport.exchangeUnlimited(model, "/api/show", json, (status, body) -> {
+                if (status != 200) return null;
+                for (Iterator<Map.Entry<String, JsonNode>> it = OllamaTransport.MAPPER.readTree(body).path("model_info").fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> e = it.next();
+                    if (e.getKey().endsWith(".context_length") && e.getValue().canConvertToInt()) return e.getValue().intValue();
+                }
+                return null;
+            });
+            if (length != null && length > 0) {
+                WINDOWS.put(model, length);
+                LOOKUP_FAILED.remove(model);
+                return Math.min(length, numCtx);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return numCtx;
+        } catch (Exception e) {
+            // Fall back to the configured window.
+        }
+        LOOKUP_FAILED.put(model, System.nanoTime() + LOOKUP_RETRY_NANOS);
+        return numCtx;
+    }
+
+    /** Packs {@code chunks} into at most {@code budget} estimated tokens (see the class comment). */
+    static Packed pack(List<Map<String, Object>> chunks, int budget) {
+        List<Map<String, Object>> ranked = new ArrayList<>();
+        if (chunks != null) {
+            for (Map<String, Object> chunk : chunks) {
+                if (chunk != null && text(chunk) != null) ranked.add(chunk);
+            }
+        }
+        // Stable sort: unscored chunks keep the retriever's order, after all scored ones.
+        ranked.sort((a, b) -> Double.compare(score(b), score(a)));
+
+        List<Map<String, Object>> out = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        int used = 0;
+        int duplicates = 0;
+        int overBudget = 0;
+        for (Map<String, Object> chunk : ranked) {
+            String text = text(chunk);
+            long[] shingles = shingles(text);
+            int known = 0;
+            for (long s : shingles) {
+                if (seen.contains(s)) known++;
+            }
+            if (shingles.length > 0 && known >= DUPLICATE_OVERLAP * shingles.length) {
+                duplicates++;
+                continue;
+            }
+            int tokens = estimateTokens(text) + 1;
+            if (used + tokens > budget) {
+                if (!out.isEmpty() || budget <= 0) {
+                    overBudget++;
+                    continue;
+                }
+                chunk = truncated(chunk, text, budget);
+                tokens = budget;
+            }
+            out.add(chunk);
+            used += tokens;
+            for (long s : shingles) seen.add(s);
+        }
+        return new Packed(out, used, duplicates, overBudget);
+    }
+
+    /**
+     * {@code chunks} in a canonical order for the prompt: by path, then chunk index; chunks without a path follow in
+     * their given order. Two questions that retrieve the same chunks with different scores then produce the same
+     * context text, and so the same token prefix Ollama can serve from its KV cache.
+     */
+    static List<Map<String, Object>> promptOrder(List<Map<String, Object>> chunks) {
+        List<Map<String, Object>> out = new ArrayList<>(chunks);
+        out.sort(Comparator.comparing((Map<String, Object> c) -> c.get("path") == null)
+                .thenComparing(c -> c.get("path") != null ? c.get("path").toString() : "")
+                .thenComparingInt(c -> c.get("index") instanceof Number n ? n.intValue() : 0));
+        return out;
+    }
+
+    static String text(Map<String, Object> chunk) {
+        Object text = chunk.get("text") != null ? chunk.get("text") : chunk.get("content");
+        return text != null ? text.toString() : null;
+    }
+
+    private static double score(Map<String, Object> chunk) {
+        return chunk.get("score") instanceof Number n ? n.doubleValue() : Double.NEGATIVE_INFINITY;
+    }
+
+    /** Copy of {@code chunk} with its text cut to about {@code budget} tokens. */
+    private static Map<String, Object> truncated(Map<String, Object> chunk, String text, int budget) {
+        int lo = 0;
+        int hi = text.length();
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (estimateTokens(text.subSequence(0, mid)) + 1 <= budget) lo = mid;
+            else hi = mid - 1;
+        }
+        Map<String, Object> copy = new HashMap<>(chunk);
+        copy.remove("content");
+        copy.put("text", text.substring(0, lo));
+        return copy;
+    }
+
+    /** Hashes of the lower-cased word 5-grams of {@code text} (a single hash for texts shorter than that). */
+    private static long[] shingles(String text) {
+        String[] words = text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        List<String> w = new ArrayList<>(words.length);
+        for (String word : words) {
+            if (!word.isEmpty()) w.add(word);
+        }
+        if (w.isEmpty()) {
+            return new long[0];
+        }
+        int count = Math.max(1, w.size() - SHINGLE + 1);
+        long[] out = new long[count];
+        for (int i = 0; i < count; i++) {
+            long h = 1125899906842597L;
+            for (int j = i; j < Math.min(w.size(), i + SHINGLE); j++) {
+                h = 31 * h + w.get(j).hashCode();
+            }
+            out[i] = h;
+        }
+        return out;
+    }
+}
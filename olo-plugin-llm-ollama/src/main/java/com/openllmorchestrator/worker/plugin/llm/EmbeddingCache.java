@@ -0,0 +1,324 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistent cache of embedding vectors keyed by SHA-256 of (model, text), so re-ingesting a folder only
+ * sends new or changed chunks to Ollama. Two tiers:
+ * <ul>
+ *   <li>an in-memory LRU of recently used vectors, bounded by entry count;</li>
+ *   <li>append-only log files on disk, read through memory maps, with a key → location index rebuilt by
+ *       scanning the logs on open.</li>
+ * </ul>
+ * Log layout: magic int, version int, then records of 32-byte key, dimension int, dimension floats and a CRC32C
+ * of the preceding record bytes, all little-endian. On open, the scan stops at the first record that is cut
+ * short or fails its checksum (a crash mid-append, or writes reordered by the page cache) and truncates the log
+ * there. A log rolls over to the next file at {@link #MAX_FILE_BYTES} so each one stays mappable as a single buffer.
+ * Logs of an older version are discarded on open; the vectors are simply embedded again.
+ * <p>
+ * One process at a time: {@link #open} takes an exclusive lock on {@code embeddings.lock} in the directory and fails
+ * when another process holds it, so appends from two workers never interleave in one log.
+ * All methods are synchronized; lookups are microseconds against the milliseconds of an embed call.
+ */
+final class EmbeddingCache {
+
+    static final int MAGIC = 0x454C4F4F; // "OOLE" little-endian
+    static final int VERSION = 2;
+    static final long MAX_FILE_BYTES = 1L << 30;
+    private static final int HEADER_BYTES = 8;
+    private static final int KEY_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = KEY_BYTES + Integer.BYTES;
+    private static final int CRC_BYTES = Integer.BYTES;
+
+    private final Path dir;
+    /** Held for the life of the cache; see {@link #open}. */
+    private FileLock lock;
+    private final Map<Key, float[]> memory;
+    /** Key → (file number << 32 | offset) of its record. */
+    private final Map<Key, Long> index = new HashMap<>();
+    /** Read-only map per log file; the active file's map is refreshed when it is behind {@link #activeSize}. */
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+    private FileChannel active;
+    private int activeFile;
+    private long activeSize;
+    private boolean dirty;
+
+    private EmbeddingCache(Path dir, int memoryEntries) {
+        this.dir = dir;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, float[]> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+    /** Opens (or creates) the cache in {@code dir}, indexing every record already on disk. */
+    static EmbeddingCache open(Path dir, int memoryEntries) throws IOException {
+        Files.createDirectories(dir);
+        EmbeddingCache cache = new EmbeddingCache(dir, memoryEntries);
+        cache.lock();
+        try {
+            cache.load();
+        } catch (IOException | RuntimeException e) {
+            cache.lock.channel().close();
+            throw e;
+        }
+        return cache;
+    }
+
+    /** SHA-256 of the UTF-8 model id, a zero byte, and the UTF-8 text. */
+    static Key key(String model, String text) {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        sha.update(model.getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+        sha.update(text.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer digest = ByteBuffer.wrap(sha.digest());
+        return new Key(digest.getLong(), digest.getLong(), digest.getLong(), digest.getLong());
+    }
+
+    /** Cached vector for {@code key} (a copy the caller may keep), or null on a miss in both tiers. */
+    synchronized float[] get(Key key) throws IOException {
+        float[] v = memory.get(key);
+        if (v == null) {
+            Long location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            v = read(location);
+            memory.put(key, v);
+        }
+        return v.clone();
+    }
+
+    /** Stores {@code vector} in memory and appends it to the active log unless the key is already on disk. */
+    synchronized void put(Key key, float[] vector) throws IOException {
+        memory.put(key, vector.clone());
+        if (index.containsKey(key)) {
+            return;
+        }
+        int size = RECORD_HEADER_BYTES + vector.length * Float.BYTES + CRC_BYTES;
+        if (activeSize + size > MAX_FILE_BYTES && activeSize > HEADER_BYTES) {
+            roll();
+        }
+        ByteBuffer record = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        key.writeTo(record);
+        record.putInt(vector.length);
+        for (float f : vector) record.putFloat(f);
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        long offset = activeSize;
+        while (record.hasRemaining()) {
+            active.write(record, offset + record.position());
+        }
+        index.put(key, ((long) activeFile << 32) | offset);
+        activeSize += size;
+        dirty = true;
+    }
+
+    /** Forces records appended since the last flush to disk. */
+    synchronized void flush() throws IOException {
+        if (dirty) {
+            active.force(false);
+            dirty = false;
+        }
+    }
+
+    synchronized int diskEntries() {
+        return index.size();
+    }
+
+    private float[] read(long location) throws IOException {
+        int file = (int) (location >>> 32);
+        int offset = (int) location;
+        MappedByteBuffer buffer = mapped.get(file);
+        if (file == activeFile && (buffer == null || buffer.capacity() < activeSize)) {
+            buffer = map(active, activeSize);
+            mapped.set(file, buffer);
+        }
+        int dimension = buffer.getInt(offset + KEY_BYTES);
+        float[] v = new float[dimension];
+        buffer.slice(offset + RECORD_HEADER_BYTES, dimension * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .get(v);
+        return v;
+    }
+
+    private void lock() throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve("embeddings.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("embedding cache " + dir + " is in use by another process");
+        }
+    }
+
+    private void load() throws IOException {
+        List<Path> logs;
+        try (Stream<Path> files = Files.list(dir)) {
+            logs = files.filter(p -> p.getFileName().toString().matches("embeddings-\\d{5}\\.log")).sorted().toList();
+        }
+        if (!logs.isEmpty() && olderVersion(logs.get(0))) {
+            for (Path log : logs) Files.delete(log);
+            logs = List.of();
+        }
+        for (int i = 0; i < logs.size(); i++) {
+            Path log = logs.get(i);
+            if (!log.getFileName().toString().equals(logName(i))) {
+                throw new IOException("embedding cache log missing before " + log + "; delete " + dir + " to rebuild");
+            }
+            boolean last = i == logs.size() - 1;
+            FileChannel channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            long end = size >= HEADER_BYTES ? scan(log, channel, size, i) : 0;
+            if (last) {
+                if (end < size) {
+                    channel.truncate(end);
+                }
+                if (end == 0) {
+                    writeHeader(channel);
+                    end = HEADER_BYTES;
+                }
+                active = channel;
+                activeFile = i;
+                activeSize = end;
+                mapped.add(null);
+            } else {
+                mapped.add(end > 0 ? map(channel, end) : null);
+                channel.close();
+            }
+        }
+        if (active == null) {
+            mapped.add(null);
+            openLog(0);
+        }
+    }
+
+    /** Indexes the complete records of one log and returns the offset just past the last one. */
+    private long scan(Path log, FileChannel channel, long size, int file) throws IOException {
+        MappedByteBuffer buffer = map(channel, size);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not an embedding cache log (or unsupported version): " + log + "; delete " + dir + " to rebuild");
+        }
+        long pos = HEADER_BYTES;
+        CRC32C crc = new CRC32C();
+        while (pos + RECORD_HEADER_BYTES <= size) {
+            int dimension = buffer.getInt((int) pos + KEY_BYTES);
+            long body = RECORD_HEADER_BYTES + (long) dimension * Float.BYTES;
+            long next = pos + body + CRC_BYTES;
+            if (dimension <= 0 || next > size) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice((int) pos, (int) body));
+            if (buffer.getInt((int) (pos + body)) != (int) crc.getValue()) {
+                break;
+            }
+            index.put(Key.read(buffer, (int) pos), ((long) file << 32) | pos);
+            pos = next;
+        }
+        return pos;
+    }
+
+    /** Whether {@code log} has our magic but an earlier format version. */
+    private static boolean olderVersion(Path log) throws IOException {
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) break;
+            }
+            return !header.hasRemaining() && header.getInt(0) == MAGIC && header.getInt(4) < VERSION;
+        }
+    }
+
+    private void roll() throws IOException {
+        active.force(false);
+        mapped.set(activeFile, map(active, activeSize));
+        active.close();
+        mapped.add(null);
+        openLog(activeFile + 1);
+    }
+
+    private void openLog(int file) throws IOException {
+        active = FileChannel.open(dir.resolve(logName(file)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader(active);
+        activeFile = file;
+        activeSize = HEADER_BYTES;
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static String logName(int file) {
+        return String.format("embeddings-%05d.log", file);
+    }
+
+    /** SHA-256 digest as four longs: cheap to hash and compare, and half the size of a hex string. */
+    record Key(long a, long b, long c, long d) {
+
+        void writeTo(ByteBuffer out) {
+            out.putLong(a).putLong(b).putLong(c).putLong(d);
+        }
+
+        static Key read(ByteBuffer in, int offset) {
+            return new Key(in.getLong(offset), in.getLong(offset + 8), in.getLong(offset + 16), in.getLong(offset + 24));
+        }
+    }
+}
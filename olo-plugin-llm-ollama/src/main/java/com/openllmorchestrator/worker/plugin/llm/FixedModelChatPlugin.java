@@ -15,7 +15,6 @@
  */
 package com.openllmorchestrator.worker.plugin.llm;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.openllmorchestrator.worker.contract.ContractCompatibility;
 import com.openllmorchestrator.worker.contract.PluginContext;
@@ -25,48 +24,50 @@ import com.openllmorchestrator.worker.contract.PluginTypes;
 import com.openllmorchestrator.worker.contract.CapabilityHandler;
 import com.openllmorchestrator.worker.contract.CapabilityResult;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Chat plugin that always uses a fixed Ollama model. Used in the "query-all-models" ASYNC pipeline
  * so each stage has one model; outputs modelLabel for the merge handler.
+ * Messages go to /api/chat with the full history, a lone question to /api/generate (see {@link OllamaChat}).
+ * Constructing a plugin registers its model with {@link ModelWarmer}, which preloads it and keeps it loaded, so
+ * the fan-out does not wait for the slowest cold load. Outputs coldStart and responseMillis per call, plus the
+ * model's cold/warm latency averages.
  */
 public abstract class FixedModelChatPlugin implements CapabilityHandler, ContractCompatibility, PlannerInputDescriptor, PluginTypeDescriptor {
 
     private static final String CONTRACT_VERSION = "0.0.1";
 
-    private static final String OLLAMA_BASE = getEnv("OLLAMA_BASE_URL", "http://localhost:11434");
-    private static final ObjectMapper MAPPER = new ObjectMapper();
-    private static final HttpClient HTTP = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(10))
-            .build();
-
-    private static String getEnv(String key, String defaultValue) {
-        String v = System.getenv(key);
-        if (v != null && !v.isBlank()) return v.trim();
-        return System.getProperty(key, defaultValue);
-    }
+    private static final ObjectMapper MAPPER = OllamaTransport.MAPPER;
 
+    /** Subclasses return a constant here; it is called from this constructor. */
     protected abstract String getModelId();
     protected abstract String getModelLabel();
 
+    @SuppressWarnings("this-escape")
+    protected FixedModelChatPlugin() {
+        ModelWarmer.register(getModelId());
+    }
+
     @Override
     public CapabilityResult execute(PluginContext context) {
         Map<String, Object> input = context.getOriginalInput();
-        String question = (String) input.get("question");
-        if (question == null || question.isBlank()) {
-            question = deriveQuestionFromMessages(input);
+        List<Map<String, Object>> messages = OllamaChat.messages(input);
+        String response;
+        if (messages != null) {
+            response = callOllama(OllamaChat.CHAT_PATH, OllamaChat.chatBody(getModelId(), messages, false, input), context);
+        } else {
+            String question = (String) input.get("question");
+            if (question == null || question.isBlank()) {
+                question = deriveQuestionFromMessages(input);
+            }
+            response = question == null || question.isBlank() ? ""
+                    : callOllama(OllamaChat.GENERATE_PATH, OllamaChat.generateBody(getModelId(), question, false, input), context);
         }
-        String response = callOllama(question, getModelId());
         context.putOutput("response", response);
         context.putOutput("result", response);
         context.putOutput("modelLabel", getModelLabel());
@@ -111,29 +112,23 @@ public abstract class FixedModelChatPlugin implements CapabilityHandler, Contrac
         return "";
     }
 
-    private static String callOllama(String prompt, String modelId) {
-        if (prompt == null || prompt.isBlank()) return "";
+    private static String callOllama(String path, Map<String, Object> body, PluginContext context) {
         try {
-            Map<String, Object> body = Map.of(
-                    "model", modelId,
-                    "prompt", prompt,
-                    "stream", false
-            );
+            String model = (String) body.get("model");
             byte[] json = MAPPER.writeValueAsBytes(body);
-            int timeoutSec = OllamaModelResolver.getOllamaTimeoutSeconds();
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(OLLAMA_BASE + "/api/generate"))
-                    .timeout(Duration.ofSeconds(timeoutSec))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofByteArray(json))
-                    .build();
-            HttpResponse<String> resp = HTTP.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            if (resp.statusCode() != 200) {
-                return "Error: Ollama returned " + resp.statusCode() + " – " + resp.body();
+            long start = System.nanoTime();
+            OllamaChat.Reply reply = OllamaTransport.sendShared(model, path, json);
+            if (reply.error() != null) {
+                String warmupError = ModelWarmer.lastError(model);
+                if (warmupError != null) context.putOutput("warmupError", warmupError);
+                return "Error: Ollama returned " + reply.error();
             }
-            JsonNode root = MAPPER.readTree(resp.body());
-            JsonNode responseNode = root.path("response");
-            return responseNode.isMissingNode() ? "" : responseNode.asText();
+            long nanos = System.nanoTime() - start;
+            context.putOutput("coldStart", ModelWarmer.record(model, reply.loadDurationNanos(), nanos));
+            context.putOutput("responseMillis", TimeUnit.NANOSECONDS.toMillis(nanos));
+            ModelWarmer.stats(model).forEach(context::putOutput);
+            OllamaChat.putContext(context, reply);
+            return reply.content();
         } catch (Exception e) {
             return "Error calling Ollama: " + e.getMessage();
         }
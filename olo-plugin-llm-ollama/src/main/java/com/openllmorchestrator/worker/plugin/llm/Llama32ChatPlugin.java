@@ -15,7 +15,6 @@
  */
 package com.openllmorchestrator.worker.plugin.llm;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.openllmorchestrator.worker.contract.ContractCompatibility;
 import com.openllmorchestrator.worker.contract.PluginContext;
@@ -26,20 +25,31 @@ import com.openllmorchestrator.olo.OloPlugin;
 import com.openllmorchestrator.worker.contract.CapabilityHandler;
 import com.openllmorchestrator.worker.contract.CapabilityResult;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
+import java.io.IOException;
 import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.time.Duration;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Chat LLM plugin via Ollama (no RAG). Supports any model: use input.modelId or pipeline name (e.g. chat-mistral).
  * Input: "messages" (chat array) or "question" (string). For RAG use Llama32ModelPlugin.
- * Env: OLLAMA_BASE_URL; default model OLLAMA_MODEL.
+ * Messages go to /api/chat with the full history (see {@link OllamaChat}); a lone question goes to /api/generate,
+ * whose returned "context" can be passed back as input on the next turn. Optional "keepAlive" (or OLLAMA_KEEP_ALIVE).
+ * With "stream" (or OLLAMA_STREAM=true) the completion is read as Ollama's NDJSON chunks while it is generated;
+ * each token chunk goes to the {@code Consumer<String>} found in context state under {@link #TOKEN_LISTENER_KEY},
+ * if any, so callers can show text as soon as the first token arrives.
+ * Env: OLLAMA_BASE_URL, OLLAMA_STREAM, OLLAMA_STREAM_IDLE_SECONDS, OLLAMA_CHAT_API, OLLAMA_KEEP_ALIVE; default model
+ * OLLAMA_MODEL.
  */
 @OloPlugin(
     id = "com.openllm.plugin.llm.ollama",
@@ -50,19 +60,28 @@ import java.util.Map;
     inputs = {
         @OloPlugin.Input(name = "messages", type = "array", required = false, description = "Chat messages array"),
         @OloPlugin.Input(name = "question", type = "string", required = false, description = "Single question string"),
-        @OloPlugin.Input(name = "modelId", type = "string", required = false, description = "Ollama model id")
+        @OloPlugin.Input(name = "modelId", type = "string", required = false, description = "Ollama model id"),
+        @OloPlugin.Input(name = "stream", type = "boolean", required = false, description = "Stream tokens as generated (default OLLAMA_STREAM)"),
+        @OloPlugin.Input(name = "keepAlive", type = "string", required = false, description = "How long Ollama keeps the model loaded, e.g. 10m or -1 (default OLLAMA_KEEP_ALIVE)"),
+        @OloPlugin.Input(name = "context", type = "array", required = false, description = "Context tokens from the previous question-only turn")
     },
     outputs = {
         @OloPlugin.Output(name = "result", type = "string", description = "Model response text"),
-        @OloPlugin.Output(name = "response", type = "string", description = "Alias for result")
+        @OloPlugin.Output(name = "response", type = "string", description = "Alias for result"),
+        @OloPlugin.Output(name = "timeToFirstTokenMillis", type = "integer", description = "Time until the first token (whole response when not streaming)"),
+        @OloPlugin.Output(name = "responseMillis", type = "integer", description = "Time until the response was complete"),
+        @OloPlugin.Output(name = "context", type = "array", description = "Context tokens to send with the next question-only turn")
     }
 )
 public final class Llama32ChatPlugin implements CapabilityHandler, ContractCompatibility, PlannerInputDescriptor, PluginTypeDescriptor {
 
     private static final String CONTRACT_VERSION = "0.0.1";
     public static final String NAME = "com.openllmorchestrator.worker.plugin.llm.Llama32ChatPlugin";
-    private static final String OLLAMA_BASE = getEnv("OLLAMA_BASE_URL", "http://localhost:11434");
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final boolean DEFAULT_STREAM = Boolean.parseBoolean(getEnv("OLLAMA_STREAM", "false"));
+    private static final long IDLE_SECONDS = getIntEnv("OLLAMA_STREAM_IDLE_SECONDS", 60);
+    /** Context state key of an optional {@code Consumer<String>} that receives each streamed token chunk. */
+    public static final String TOKEN_LISTENER_KEY = "ollama.tokenListener";
+    private static final ObjectMapper MAPPER = OllamaTransport.MAPPER;
 
     private static String getEnv(String key, String defaultValue) {
         String v = System.getenv(key);
@@ -70,9 +89,14 @@ public final class Llama32ChatPlugin implements CapabilityHandler, ContractCompa
         return System.getProperty(key, defaultValue);
     }
 
-    private static final HttpClient HTTP = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(10))
-            .build();
+    private static int getIntEnv(String key, int defaultValue) {
+        try {
+            int v = Integer.parseInt(getEnv(key, String.valueOf(defaultValue)));
+            return v > 0 ? v : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
 
     @Override
     public String name() {
@@ -82,14 +106,34 @@ public final class Llama32ChatPlugin implements CapabilityHandler, ContractCompa
     @Override
     public CapabilityResult execute(PluginContext context) {
         Map<String, Object> input = context.getOriginalInput();
-        String question = (String) input.get("question");
-        if (question == null || question.isBlank()) {
-            question = deriveQuestionFromMessages(input);
-        }
         String modelId = OllamaModelResolver.resolveModelId(context);
-        String response = callOllama(question, modelId);
+        Object streamObj = input.get("stream");
+        boolean stream = streamObj != null ? Boolean.parseBoolean(streamObj.toString()) : DEFAULT_STREAM;
+        List<Map<String, Object>> messages = OllamaChat.messages(input);
+        String path;
+        Map<String, Object> body;
+        if (messages != null) {
+            path = OllamaChat.CHAT_PATH;
+            body = OllamaChat.chatBody(modelId, messages, stream, input);
+        } else {
+            String question = (String) input.get("question");
+            if (question == null || question.isBlank()) {
+                question = deriveQuestionFromMessages(input);
+            }
+            path = OllamaChat.GENERATE_PATH;
+            body = question == null || question.isBlank() ? null : OllamaChat.generateBody(modelId, question, stream, input);
+        }
+        long start = System.nanoTime();
+        Completion completion = body == null
+                ? new Completion("", 0, null)
+                : stream ? streamOllama(path, body, tokenListener(context), start) : callOllama(path, body, start);
+        long end = System.nanoTime();
+        String response = completion.text();
         context.putOutput("response", response);
         context.putOutput("result", response);
+        OllamaChat.putContext(context, completion.last());
+        context.putOutput("timeToFirstTokenMillis", (completion.firstTokenNanos() > 0 ? completion.firstTokenNanos() : end - start) / 1_000_000);
+        context.putOutput("responseMillis", (end - start) / 1_000_000);
         return CapabilityResult.builder().capabilityName(NAME).data(new HashMap<>(context.getCurrentPluginOutput())).build();
     }
 
@@ -131,31 +175,171 @@ public final class Llama32ChatPlugin implements CapabilityHandler, ContractCompa
         return "";
     }
 
-    private String callOllama(String prompt, String modelId) {
-        if (prompt == null || prompt.isBlank()) return "";
+    /**
+     * Response text, nanoseconds from the request until the first token (0 if none arrived), and the final
+     * response object (null on error).
+     */
+    private record Completion(String text, long firstTokenNanos, OllamaChat.Reply last) {}
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<String> tokenListener(PluginContext context) {
+        Object listener = context.get(TOKEN_LISTENER_KEY);
+        return listener instanceof Consumer<?> c ? (Consumer<String>) c : null;
+    }
+
+    private Completion callOllama(String path, Map<String, Object> body, long start) {
         try {
-            Map<String, Object> body = Map.of(
-                    "model", modelId,
-                    "prompt", prompt,
-                    "stream", false
-            );
             byte[] json = MAPPER.writeValueAsBytes(body);
-            int timeoutSec = OllamaModelResolver.getOllamaTimeoutSeconds();
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(OLLAMA_BASE + "/api/generate"))
-                    .timeout(Duration.ofSeconds(timeoutSec))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofByteArray(json))
-                    .build();
-            HttpResponse<String> resp = HTTP.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            if (resp.statusCode() != 200) {
-                return "Error: Ollama returned " + resp.statusCode() + " – " + resp.body();
+            OllamaChat.Reply reply = OllamaTransport.sendShared((String) body.get("model"), path, json);
+            if (reply.error() != null) {
+                return new Completion("Error: Ollama returned " + reply.error(), 0, null);
             }
-            JsonNode root = MAPPER.readTree(resp.body());
-            JsonNode responseNode = root.path("response");
-            return responseNode.isMissingNode() ? "" : responseNode.asText();
+            return new Completion(reply.content(), System.nanoTime() - start, reply);
         } catch (Exception e) {
-            return "Error calling Ollama: " + e.getMessage();
+            return new Completion("Error calling Ollama: " + e.getMessage(), 0, null);
+        }
+    }
+
+    /**
+     * Like {@link #callOllama} for a body with "stream": true. Ollama then answers with one JSON object per
+     * line ({"response": "...", "done": false}, or "message" for /api/chat, ..., {"done": true, ...}); lines
+     * are consumed as they arrive and each non-empty token chunk is passed to {@code listener} before the
+     * next one is read. A line that does not arrive within OLLAMA_STREAM_IDLE_SECONDS aborts the stream. Only a
+     * stream that reached its "done" chunk (or a complete error response) reports its status; a reset, stall or
+     * error chunk mid-stream counts as a failed request for the server and the model's limit.
+     */
+    private Completion streamOllama(String path, Map<String, Object> body, Consumer<String> listener, long start) {
+        LineQueue lines = new LineQueue();
+        try {
+            byte[] json = MAPPER.writeValueAsBytes(body);
+            // The slots are held until the whole stream has been read.
+            try (OllamaTransport.Permit permit = OllamaTransport.acquire((String) body.get("model"), path, json)) {
+                HttpResponse<Void> resp = OllamaTransport.sendStreaming(permit, lines.handler());
+                if (resp.statusCode() != 200) {
+                    StringBuilder error = new StringBuilder();
+                    for (String line = lines.next(); line != null; line = lines.next()) {
+                        error.append(error.isEmpty() ? "" : "\n").append(line);
+                    }
+                    permit.complete(resp.statusCode(), null);
+                    return new Completion("Error: Ollama returned " + resp.statusCode() + " – " + error, 0, null);
+                }
+                StringBuilder text = new StringBuilder();
+                long firstToken = 0;
+                for (String line = lines.next(); line != null; line = lines.next()) {
+                    if (line.isBlank()) continue;
+                    OllamaChat.Reply chunk = OllamaChat.parse(line);
+                    if (chunk.error() != null) {
+                        return new Completion("Error: Ollama returned " + chunk.error(), firstToken, null);
+                    }
+                    String token = chunk.content();
+                    if (!token.isEmpty()) {
+                        if (firstToken == 0) {
+                            firstToken = System.nanoTime() - start;
+                        }
+                        text.append(token);
+                        if (listener != null) {
+                            listener.accept(token);
+                        }
+                    }
+                    if (chunk.done()) {
+                        permit.complete(resp.statusCode(), chunk);
+                        return new Completion(text.toString(), firstToken, chunk);
+                    }
+                }
+                return new Completion("Error calling Ollama: stream ended before the done chunk", firstToken, null);
+            }
+        } catch (Exception e) {
+            return new Completion("Error calling Ollama: " + e.getMessage(), 0, null);
+        } finally {
+            lines.cancel();
+        }
+    }
+
+    /**
+     * Lines of a streamed body, handed from the client's threads to the reading thread one at a time (each line
+     * is requested only after the previous one was taken), with a deadline per line.
+     */
+    private static final class LineQueue implements Flow.Subscriber<String> {
+        private static final Object END = new Object();
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        private volatile Flow.Subscription subscription;
+
+        /** Completes the response at the headers, so lines can be read while the body is still arriving. */
+        HttpResponse.BodyHandler<Void> handler() {
+            return info -> {
+                HttpResponse.BodySubscriber<Void> lines = HttpResponse.BodySubscribers.fromLineSubscriber(this);
+                return new HttpResponse.BodySubscriber<>() {
+                    @Override
+                    public CompletionStage<Void> getBody() {
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    @Override
+                    public void onSubscribe(Flow.Subscription s) {
+                        lines.onSubscribe(s);
+                    }
+
+                    @Override
+                    public void onNext(List<ByteBuffer> item) {
+                        lines.onNext(item);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        lines.onError(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        lines.onComplete();
+                    }
+                };
+            };
+        }
+
+        /** The next line, or null at the end of the body. */
+        String next() throws IOException, InterruptedException {
+            Object item = queue.poll(IDLE_SECONDS, TimeUnit.SECONDS);
+            if (item == null) {
+                throw new HttpTimeoutException("no data from Ollama for " + IDLE_SECONDS + " s (OLLAMA_STREAM_IDLE_SECONDS)");
+            }
+            if (item == END) {
+                queue.add(END);
+                return null;
+            }
+            if (item instanceof Throwable t) {
+                queue.add(t);
+                throw t instanceof IOException io ? io : new IOException(t);
+            }
+            subscription.request(1);
+            return (String) item;
+        }
+
+        /** Stops the body; the client then drops the connection instead of reading the rest. */
+        void cancel() {
+            Flow.Subscription s = subscription;
+            if (s != null) s.cancel();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            s.request(1);
+        }
+
+        @Override
+        public void onNext(String line) {
+            queue.add(line);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            queue.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            queue.add(END);
         }
     }
 }
@@ -15,7 +15,6 @@
  */
 package com.openllmorchestrator.worker.plugin.llm;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.openllmorchestrator.worker.contract.ContractCompatibility;
 import com.openllmorchestrator.worker.contract.PluginContext;
@@ -26,12 +25,6 @@ import com.openllmorchestrator.worker.contract.CapabilityHandler;
 import com.openllmorchestrator.olo.OloPlugin;
 import com.openllmorchestrator.worker.contract.CapabilityResult;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +34,19 @@ import java.util.Set;
  * RAG LLM plugin via Ollama. Supports any model: use input.modelId or pipeline name (e.g. rag-mistral).
  * Base URL from env OLLAMA_BASE_URL; default model from OLLAMA_MODEL.
  * Input: "question" (string) or "messages" (chat array); optional "modelId". Uses retrievedChunks for RAG context.
+ * Messages go to /api/chat with the full history; the retrieved context is folded into the last user turn only,
+ * so earlier turns keep the same prefix and Ollama can reuse their KV cache (see {@link OllamaChat}).
+ * Optional "keepAlive" (or OLLAMA_KEEP_ALIVE) and, for question-only calls, "context" from the previous turn.
+ * Prompts are a stable prefix (preamble, then the packed chunks in path/index order) followed by the question, so
+ * Ollama's KV cache serves the shared prefix of consecutive prompts; {@link PrefixTracker} reports whether it did.
+ * Retrieved chunks are packed into a token budget first ({@link ContextPacker}): highest score first, near-duplicates
+ * dropped, within the model's window less the question and OLLAMA_ANSWER_TOKENS.
+ * With OLLAMA_RESPONSE_CACHE=true, answers are cached by (model, normalized prompt, retrieved chunk ids) in
+ * {@link ResponseCache}; a first turn with a "questionEmbedding" may also reuse the answer to a near-identical
+ * question over the same chunks.
+ * Env: OLLAMA_RESPONSE_CACHE, OLLAMA_RESPONSE_CACHE_ENTRIES, OLLAMA_RESPONSE_CACHE_TTL_SECONDS,
+ * OLLAMA_RESPONSE_CACHE_SIMILARITY; input "cache": false bypasses it for one call.
+ * Env for packing: OLLAMA_NUM_CTX, OLLAMA_ANSWER_TOKENS, OLLAMA_CONTEXT_BUDGET_TOKENS; input "contextTokens" overrides.
  */
 @OloPlugin(
     id = "com.openllm.plugin.llm.ollama.rag",
@@ -51,28 +57,73 @@ import java.util.Set;
     inputs = {
         @OloPlugin.Input(name = "question", type = "string", required = false, description = "User question"),
         @OloPlugin.Input(name = "messages", type = "array", required = false, description = "Chat messages"),
-        @OloPlugin.Input(name = "modelId", type = "string", required = false, description = "Ollama model id")
+        @OloPlugin.Input(name = "modelId", type = "string", required = false, description = "Ollama model id"),
+        @OloPlugin.Input(name = "keepAlive", type = "string", required = false, description = "How long Ollama keeps the model loaded, e.g. 10m or -1 (default OLLAMA_KEEP_ALIVE)"),
+        @OloPlugin.Input(name = "context", type = "array", required = false, description = "Context tokens from the previous question-only turn"),
+        @OloPlugin.Input(name = "cache", type = "boolean", required = false, description = "Set false to skip the response cache for this call"),
+        @OloPlugin.Input(name = "contextTokens", type = "integer", required = false, description = "Token budget for retrieved context (default: derived from the model's window)")
     },
     outputs = {
         @OloPlugin.Output(name = "result", type = "string", description = "Model response"),
-        @OloPlugin.Output(name = "response", type = "string", description = "Alias for result")
+        @OloPlugin.Output(name = "response", type = "string", description = "Alias for result"),
+        @OloPlugin.Output(name = "context", type = "array", description = "Context tokens to send with the next question-only turn"),
+        @OloPlugin.Output(name = "promptTokens", type = "integer", description = "Estimated prompt tokens"),
+        @OloPlugin.Output(name = "contextTokens", type = "integer", description = "Estimated tokens of the packed context"),
+        @OloPlugin.Output(name = "contextBudgetTokens", type = "integer", description = "Token budget the context was packed into"),
+        @OloPlugin.Output(name = "contextChunksUsed", type = "integer", description = "Retrieved chunks that went into the prompt"),
+        @OloPlugin.Output(name = "contextChunksDropped", type = "integer", description = "Chunks left out as duplicates or over budget"),
+        @OloPlugin.Output(name = "promptEvalTokens", type = "integer", description = "Prompt tokens Ollama evaluated (cached prefix tokens excluded)"),
+        @OloPlugin.Output(name = "promptEvalMillis", type = "integer", description = "Prefill time reported by Ollama"),
+        @OloPlugin.Output(name = "prefixReused", type = "boolean", description = "Whether Ollama served the prompt's stable prefix from its KV cache"),
+        @OloPlugin.Output(name = "prefixReuseRatio", type = "number", description = "Share of requests with this prefix that reused it"),
+        @OloPlugin.Output(name = "responseCache", type = "string", description = "hit, semantic or miss"),
+        @OloPlugin.Output(name = "responseCacheSavedMillis", type = "integer", description = "Generation time the cached answer saved"),
+        @OloPlugin.Output(name = "responseCacheHitRatio", type = "number", description = "Hits over lookups since the worker started")
     }
 )
 public final class Llama32ModelPlugin implements CapabilityHandler, ContractCompatibility, PlannerInputDescriptor, PluginTypeDescriptor {
 
     private static final String CONTRACT_VERSION = "0.0.1";
     public static final String NAME = "com.openllmorchestrator.worker.plugin.llm.Llama32ModelPlugin";
-    private static final String OLLAMA_BASE = getEnv("OLLAMA_BASE_URL", "http://localhost:11434");
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectMapper MAPPER = OllamaTransport.MAPPER;
+    private static final PrefixTracker PREFIXES = new PrefixTracker(1000);
+    /** Null unless OLLAMA_RESPONSE_CACHE=true. */
+    private static final ResponseCache RESPONSE_CACHE = !"true".equalsIgnoreCase(getEnv("OLLAMA_RESPONSE_CACHE", "false")) ? null
+            : new ResponseCache(getIntEnv("OLLAMA_RESPONSE_CACHE_ENTRIES", 1000),
+                    getIntEnv("OLLAMA_RESPONSE_CACHE_TTL_SECONDS", 600) * 1_000_000_000L,
+                    getDoubleEnv("OLLAMA_RESPONSE_CACHE_SIMILARITY", 0.97));
+
+    private static final int NUM_CTX = getIntEnv("OLLAMA_NUM_CTX", 4096);
+    private static final int ANSWER_TOKENS = getIntEnv("OLLAMA_ANSWER_TOKENS", 512);
+    /** 0: derive the budget from the model's window. */
+    private static final int CONTEXT_BUDGET_TOKENS = getIntEnv("OLLAMA_CONTEXT_BUDGET_TOKENS", 0);
+    /** The preamble and question labels plus the chat template's role markers, rounded up. */
+    private static final int PROMPT_OVERHEAD_TOKENS = 64;
 
     private static String getEnv(String key, String defaultValue) {
         String v = System.getenv(key);
         if (v != null && !v.isBlank()) return v.trim();
         return System.getProperty(key, defaultValue);
     }
-    private static final HttpClient HTTP = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(10))
-            .build();
+
+    private static int getIntEnv(String key, int defaultValue) {
+        try {
+            int v = Integer.parseInt(getEnv(key, String.valueOf(defaultValue)));
+            return v > 0 ? v : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /** Unlike the int variant, 0 is kept (it turns the semantic tier off). */
+    private static double getDoubleEnv(String key, double defaultValue) {
+        try {
+            double v = Double.parseDouble(getEnv(key, String.valueOf(defaultValue)));
+            return v >= 0 ? v : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
 
     @Override
     public String name() {
@@ -84,15 +135,85 @@ public final class Llama32ModelPlugin implements CapabilityHandler, ContractComp
         Map<String, Object> input = context.getOriginalInput();
         Map<String, Object> accumulated = context.getAccumulatedOutput();
 
-        String question = (String) input.get("question");
-        if (question == null || question.isBlank()) {
-            question = deriveQuestionFromMessages(input);
-        }
         @SuppressWarnings("unchecked")
         List<Map<String, Object>> chunks = (List<Map<String, Object>>) accumulated.get("retrievedChunks");
 
         String modelId = OllamaModelResolver.resolveModelId(context);
-        String response = callOllama(question, chunks, modelId);
+        List<Map<String, Object>> messages = OllamaChat.messages(input);
+        int lastUser = messages != null ? OllamaChat.lastUserIndex(messages) : -1;
+        String question = null;
+        if (lastUser < 0) {
+            question = (String) input.get("question");
+            if (question == null || question.isBlank()) {
+                question = deriveQuestionFromMessages(input);
+            }
+            if (question == null || question.isBlank()) {
+                context.putOutput("response", "");
+                context.putOutput("result", "");
+                return CapabilityResult.builder().capabilityName(NAME).data(new HashMap<>(context.getCurrentPluginOutput())).build();
+            }
+        }
+
+        String asked = lastUser >= 0 ? transcript(messages) : question;
+        int contextTokens = 0;
+        if (chunks != null && !chunks.isEmpty()) {
+            int budget = contextBudget(modelId, asked, input);
+            ContextPacker.Packed packed = ContextPacker.pack(chunks, budget);
+            chunks = ContextPacker.promptOrder(packed.chunks());
+            contextTokens = packed.tokens();
+            context.putOutput("contextTokens", contextTokens);
+            context.putOutput("contextBudgetTokens", budget);
+            context.putOutput("contextChunksUsed", chunks.size());
+            context.putOutput("contextChunksDropped", packed.duplicates() + packed.overBudget());
+        }
+        context.putOutput("promptTokens", ContextPacker.estimateTokens(asked) + PROMPT_OVERHEAD_TOKENS + contextTokens);
+
+        // Question-only calls that continue from "context" tokens depend on history the key cannot see.
+        ResponseCache cache = RESPONSE_CACHE != null && cacheRequested(input) && (lastUser >= 0 || input.get("context") == null)
+                ? RESPONSE_CACHE : null;
+        ContentKey scope = null;
+        ContentKey key = null;
+        float[] embedding = null;
+        if (cache != null) {
+            scope = ResponseCache.scope(modelId, chunks);
+            String images = lastUser >= 0 ? imageDigests(messages) : "";
+            key = ResponseCache.key(scope, asked + images);
+            // The semantic tier compares the question alone, so it only applies to a conversation's first turn,
+            // and never when images are attached.
+            embedding = images.isEmpty() && (lastUser < 0 || isFirstTurn(messages)) ? questionEmbedding(accumulated, input) : null;
+            ResponseCache.Hit hit = cache.get(key, scope, embedding);
+            if (hit != null) {
+                context.putOutput("response", hit.answer());
+                context.putOutput("result", hit.answer());
+                context.putOutput("responseCache", hit.tier() == ResponseCache.Tier.EXACT ? "hit" : "semantic");
+                context.putOutput("responseCacheSavedMillis", hit.savedNanos() / 1_000_000);
+                context.putOutput("responseCacheHitRatio", cache.hitRatio());
+                return CapabilityResult.builder().capabilityName(NAME).data(new HashMap<>(context.getCurrentPluginOutput())).build();
+            }
+        }
+
+        long start = System.nanoTime();
+        String contextPrefix = contextPrefix(chunks);
+        String response;
+        if (lastUser >= 0) {
+            String prefix = transcript(messages.subList(0, lastUser)) + contextPrefix;
+            if (!contextPrefix.isEmpty()) {
+                Map<String, Object> turn = messages.get(lastUser);
+                turn.put("content", contextPrefix + questionSuffix(turn.get("content").toString().trim()));
+            }
+            response = callOllama(OllamaChat.CHAT_PATH, OllamaChat.chatBody(modelId, messages, false, input), prefix, context);
+        } else {
+            response = callOllama(OllamaChat.GENERATE_PATH,
+                    OllamaChat.generateBody(modelId, contextPrefix + questionSuffix(question), false, input), contextPrefix, context);
+        }
+        if (cache != null) {
+            if (!response.startsWith("Error")) {
+                cache.put(key, scope, embedding, response, System.nanoTime() - start);
+            }
+            context.putOutput("responseCache", "miss");
+            context.putOutput("responseCacheSavedMillis", 0L);
+            context.putOutput("responseCacheHitRatio", cache.hitRatio());
+        }
         context.putOutput("response", response);
         context.putOutput("result", response);
 
@@ -138,50 +259,125 @@ public final class Llama32ModelPlugin implements CapabilityHandler, ContractComp
         return "";
     }
 
-    private String callOllama(String question, List<Map<String, Object>> contextChunks, String modelId) {
-        if (question == null || question.isBlank()) {
-            return "";
+    /**
+     * Tokens left for retrieved context: input "contextTokens" or OLLAMA_CONTEXT_BUDGET_TOKENS when set, else the
+     * model's window less the question or conversation, the prompt wrapper and OLLAMA_ANSWER_TOKENS for the answer.
+     */
+    private static int contextBudget(String modelId, String asked, Map<String, Object> input) {
+        Object v = input.get("contextTokens");
+        if (v instanceof Number n && n.intValue() > 0) {
+            return n.intValue();
+        }
+        if (CONTEXT_BUDGET_TOKENS > 0) {
+            return CONTEXT_BUDGET_TOKENS;
         }
-        String prompt = buildPrompt(question, contextChunks);
+        int window = ContextPacker.window(modelId, NUM_CTX);
+        return Math.max(0, window - ContextPacker.estimateTokens(asked) - PROMPT_OVERHEAD_TOKENS - ANSWER_TOKENS);
+    }
+
+    private static boolean cacheRequested(Map<String, Object> input) {
+        Object v = input.get("cache");
+        return v == null || !(Boolean.FALSE.equals(v) || "false".equalsIgnoreCase(v.toString()));
+    }
+
+    /** Roles and contents of the conversation as sent, before retrieved context is folded in. */
+    private static String transcript(List<Map<String, Object>> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (Map<String, Object> m : messages) {
+            sb.append(m.get("role")).append(": ").append(m.get("content")).append('\u0000');
+        }
+        return sb.toString();
+    }
+
+    /** Digest of each message's images, in order, so requests that differ only in their images get different keys. */
+    private static String imageDigests(List<Map<String, Object>> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i).get("images") instanceof List<?> images) {
+                for (Object image : images) {
+                    sb.append("image ").append(i).append(": ").append(ContentKey.of("image", String.valueOf(image)).hex()).append('\u0000');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isFirstTurn(List<Map<String, Object>> messages) {
+        int turns = 0;
+        for (Map<String, Object> m : messages) {
+            if (!"system".equals(m.get("role"))) turns++;
+        }
+        return turns == 1;
+    }
+
+    /** "questionEmbedding" from an earlier embed step or the input, as float[] or a list of numbers; else null. */
+    private static float[] questionEmbedding(Map<String, Object> accumulated, Map<String, Object> input) {
+        Object v = accumulated != null ? accumulated.get("questionEmbedding") : null;
+        if (v == null) {
+            v = input.get("questionEmbedding");
+        }
+        if (v instanceof float[] f) {
+            return f;
+        }
+        if (v instanceof List<?> list && !list.isEmpty()) {
+            float[] f = new float[list.size()];
+            for (int i = 0; i < f.length; i++) {
+                if (!(list.get(i) instanceof Number n)) return null;
+                f[i] = n.floatValue();
+            }
+            return f;
+        }
+        return null;
+    }
+
+    /**
+     * Sends the call and returns the answer or an error string. {@code prefix} is the stable part of the prompt
+     * (earlier turns and the context block); when present, whether Ollama reused it is recorded per prefix.
+     */
+    private String callOllama(String path, Map<String, Object> body, String prefix, PluginContext context) {
         try {
-            Map<String, Object> body = Map.of(
-                    "model", modelId,
-                    "prompt", prompt,
-                    "stream", false
-            );
+            String model = (String) body.get("model");
             byte[] json = MAPPER.writeValueAsBytes(body);
-            int timeoutSec = OllamaModelResolver.getOllamaTimeoutSeconds();
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(OLLAMA_BASE + "/api/generate"))
-                    .timeout(Duration.ofSeconds(timeoutSec))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofByteArray(json))
-                    .build();
-            HttpResponse<String> resp = HTTP.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            if (resp.statusCode() != 200) {
-                return "Error: Ollama returned " + resp.statusCode() + " – " + resp.body();
+            OllamaChat.Reply reply = OllamaTransport.sendShared(model, path, json);
+            if (reply.error() != null) {
+                return "Error: Ollama returned " + reply.error();
+            }
+            if (reply.promptEvalCount() > 0) {
+                context.putOutput("promptEvalTokens", reply.promptEvalCount());
+                context.putOutput("promptEvalMillis", reply.promptEvalNanos() / 1_000_000);
+                if (!prefix.isEmpty()) {
+                    PrefixTracker.Observation seen = PREFIXES.record(model, prefix, reply);
+                    context.putOutput("prefixReused", seen.reused());
+                    context.putOutput("prefixReuseRatio", seen.reuseRatio());
+                }
             }
-            JsonNode root = MAPPER.readTree(resp.body());
-            JsonNode responseNode = root.path("response");
-            return responseNode.isMissingNode() ? "" : responseNode.asText();
+            OllamaChat.putContext(context, reply);
+            return reply.content();
         } catch (Exception e) {
             return "Error calling Ollama: " + e.getMessage();
         }
     }
 
-    private static String buildPrompt(String question, List<Map<String, Object>> chunks) {
-        StringBuilder sb = new StringBuilder();
-        if (chunks != null && !chunks.isEmpty()) {
-            sb.append("Use the following context to answer the question.\n\nContext:\n");
-            for (Map<String, Object> chunk : chunks) {
-                Object text = chunk != null ? (chunk.get("text") != null ? chunk.get("text") : chunk.get("content")) : null;
-                if (text != null) {
-                    sb.append(text).append("\n");
-                }
+    /**
+     * Stable start of a RAG prompt: the instruction preamble and the retrieved context, in {@link ContextPacker#promptOrder}.
+     * The question follows in {@link #questionSuffix}, last, so consecutive prompts over the same chunks share
+     * every token up to it. Empty without chunks.
+     */
+    private static String contextPrefix(List<Map<String, Object>> chunks) {
+        if (chunks == null || chunks.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("Use the following context to answer the question.\n\nContext:\n");
+        for (Map<String, Object> chunk : chunks) {
+            String text = chunk != null ? ContextPacker.text(chunk) : null;
+            if (text != null) {
+                sb.append(text).append("\n");
             }
-            sb.append("\n");
         }
-        sb.append("Question: ").append(question).append("\n\nAnswer:");
-        return sb.toString();
+        return sb.append("\n").toString();
+    }
+
+    private static String questionSuffix(String question) {
+        return "Question: " + question + "\n\nAnswer:";
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per model@server dispatcher that lines non-streaming requests up with Ollama's parallel slots. Ollama runs up to
+ * OLLAMA_NUM_PARALLEL sequences of a loaded model in one batch and queues the rest, so sending more than that to one
+ * server only moves the wait there, where a cancelled call can no longer be dropped cheaply:
+ * <ul>
+ *   <li>the server is picked by the endpoint pool when the call arrives, and each (model, server) pair has its own
+ *       lane with {@code slots} calls in flight; waiting calls count as outstanding on their server, so the pool
+ *       routes new calls elsewhere once a server's backlog outweighs model affinity;</li>
+ *   <li>a call arriving while its lane has a free slot is sent at once, so an idle model adds no delay;</li>
+ *   <li>with every slot taken it waits for one to free up, but at most {@code window}: after that it is sent anyway
+ *       and the model's adaptive limit and the host limit in {@link OllamaTransport#sendAsync} decide, with their
+ *       bounded wait queue and fast rejection;</li>
+ *   <li>cancelling a request's future (or timing it out) drops it from the lane, or aborts it if it was already
+ *       sent.</li>
+ * </ul>
+ * The added delay is therefore zero below {@code slots} concurrent calls and at most {@code window} above.
+ */
+final class MicroBatcher {
+
+    private record Pending(String path, byte[] json, CompletableFuture<OllamaChat.Reply> future) {
+    }
+
+    private final long windowNanos;
+    private final int slots;
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ollama-batch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    MicroBatcher(long windowNanos, int slots) {
+        this.windowNanos = windowNanos;
+        this.slots = slots;
+    }
+
+    /** Queues a call for {@code model}; the future completes with its reply or fails with the call's exception. */
+    CompletableFuture<OllamaChat.Reply> submit(String model, String path, byte[] json) {
+        Pending p = new Pending(path, json, new CompletableFuture<>());
+        OllamaEndpoints.Endpoint endpoint = OllamaTransport.route(model);
+        lanes.computeIfAbsent(model + "@" + endpoint.baseUrl, k -> new Lane(model, endpoint)).add(p);
+        return p.future();
+    }
+
+    private final class Lane {
+        private final String model;
+        private final OllamaEndpoints.Endpoint endpoint;
+        private final Deque<Pending> queue = new ArrayDeque<>();
+        private int inFlight;
+
+        Lane(String model, OllamaEndpoints.Endpoint endpoint) {
+            this.model = model;
+            this.endpoint = endpoint;
+        }
+
+        void add(Pending p) {
+            synchronized (this) {
+                if (inFlight >= slots || !queue.isEmpty()) {
+                    // Counted as outstanding on the server while it waits, so routing sees the backlog.
+                    endpoint.begin();
+                    queue.add(p);
+                    timer.schedule(() -> expire(p), windowNanos, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                inFlight++;
+            }
+            send(p);
+        }
+
+        /** The call's window has passed without a free slot: send it over the lane's limit. */
+        private void expire(Pending p) {
+            synchronized (this) {
+                if (!queue.remove(p)) return;
+                endpoint.abandon();
+                inFlight++;
+            }
+            send(p);
+        }
+
+        /** A call finished: hand its slot to the calls waiting longest. */
+        private void release() {
+            List<Pending> next = new ArrayList<>();
+            synchronized (this) {
+                inFlight--;
+                while (inFlight < slots && !queue.isEmpty()) {
+                    Pending p = queue.poll();
+                    endpoint.abandon();
+                    if (p.future().isDone()) continue;
+                    inFlight++;
+                    next.add(p);
+                }
+            }
+            for (Pending p : next) send(p);
+        }
+
+        /** Sends one call to the lane's server; it then waits for slots in the transport's limits. */
+        private void send(Pending p) {
+            if (p.future().isDone()) {
+                release();
+                return;
+            }
+            CompletableFuture<HttpResponse<OllamaChat.Reply>> call =
+                    OllamaTransport.sendAsync(model, endpoint, p.path(), p.json(), OllamaChat.replyHandler());
+            p.future().whenComplete((r, e) -> {
+                if (!call.isDone()) call.cancel(true);
+            });
+            call.whenComplete((r, e) -> {
+                release();
+                if (r != null) {
+                    p.future().complete(r.body());
+                } else {
+                    p.future().completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        }
+    }
+}
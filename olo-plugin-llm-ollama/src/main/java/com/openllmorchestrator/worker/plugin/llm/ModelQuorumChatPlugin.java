@@ -0,0 +1,266 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openllmorchestrator.olo.OloPlugin;
+import com.openllmorchestrator.worker.contract.CapabilityHandler;
+import com.openllmorchestrator.worker.contract.CapabilityResult;
+import com.openllmorchestrator.worker.contract.ContractCompatibility;
+import com.openllmorchestrator.worker.contract.PlannerInputDescriptor;
+import com.openllmorchestrator.worker.contract.PluginContext;
+import com.openllmorchestrator.worker.contract.PluginTypeDescriptor;
+import com.openllmorchestrator.worker.contract.PluginTypes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Race/quorum alternative to the query-all-models ASYNC fan-out of the {@link FixedModelChatPlugin} stages: one
+ * stage sends the question to every model at once and returns after the first "quorum" successful answers, or
+ * once "budgetMillis" has passed and at least one model has answered. Requests still running are cancelled, which
+ * aborts their HTTP exchange, so the slowest models no longer set the latency of the whole step. The calls go
+ * through {@link OllamaTransport#sendSharedAsync}, so they are coalesced and batched like the other plugins' calls
+ * and no thread is held per model while they run.
+ * <p>
+ * Models from input "models" or OLLAMA_QUORUM_MODELS (comma-separated), labelled as the fixed-model plugins label
+ * them (the id without ":latest"). Outputs "responses" (modelLabel, model, result, responseMillis per answer, in
+ * arrival order) for the merge step, plus result / modelLabel of the fastest answer.
+ * Env: OLLAMA_QUORUM_MODELS, OLLAMA_QUORUM (default 1), OLLAMA_QUORUM_BUDGET_MILLIS (default 0, no budget).
+ */
+@OloPlugin(
+    id = "com.openllm.plugin.llm.ollama.quorum",
+    name = "Ollama Model Quorum",
+    version = "1.0.0",
+    description = "Queries several Ollama models in parallel and returns the first quorum answers or those within a latency budget; cancels the rest. Env: OLLAMA_QUORUM_MODELS, OLLAMA_QUORUM, OLLAMA_QUORUM_BUDGET_MILLIS.",
+    capability = { "MODEL" },
+    inputs = {
+        @OloPlugin.Input(name = "messages", type = "array", required = false, description = "Chat messages"),
+        @OloPlugin.Input(name = "question", type = "string", required = false, description = "Question"),
+        @OloPlugin.Input(name = "models", type = "array", required = false, description = "Ollama model ids (default OLLAMA_QUORUM_MODELS)"),
+        @OloPlugin.Input(name = "quorum", type = "integer", required = false, description = "Answers to wait for (default OLLAMA_QUORUM)"),
+        @OloPlugin.Input(name = "budgetMillis", type = "integer", required = false, description = "Return with the answers so far after this long (default OLLAMA_QUORUM_BUDGET_MILLIS)"),
+        @OloPlugin.Input(name = "keepAlive", type = "string", required = false, description = "How long Ollama keeps the models loaded (default OLLAMA_KEEP_ALIVE)")
+    },
+    outputs = {
+        @OloPlugin.Output(name = "result", type = "string", description = "Fastest model response"),
+        @OloPlugin.Output(name = "response", type = "string", description = "Alias for result"),
+        @OloPlugin.Output(name = "modelLabel", type = "string", description = "Label of the fastest model"),
+        @OloPlugin.Output(name = "responses", type = "array", description = "Answers in arrival order: modelLabel, model, result, responseMillis"),
+        @OloPlugin.Output(name = "cancelledModels", type = "array", description = "Labels of models whose requests were cancelled"),
+        @OloPlugin.Output(name = "modelErrors", type = "object", description = "Error per model label for models that failed")
+    }
+)
+public final class ModelQuorumChatPlugin implements CapabilityHandler, ContractCompatibility, PlannerInputDescriptor, PluginTypeDescriptor {
+
+    private static final String CONTRACT_VERSION = "0.0.1";
+    public static final String NAME = "com.openllmorchestrator.worker.plugin.llm.ModelQuorumChatPlugin";
+    private static final ObjectMapper MAPPER = OllamaTransport.MAPPER;
+    private static final List<String> DEFAULT_MODELS = List.of(
+            getEnv("OLLAMA_QUORUM_MODELS", "mistral:latest,phi3:latest,gemma2:2b,qwen2:1.5b,llama3.2:latest").split("\\s*,\\s*"));
+    private static final int DEFAULT_QUORUM = getIntEnv("OLLAMA_QUORUM", 1);
+    private static final long DEFAULT_BUDGET_MILLIS = getIntEnv("OLLAMA_QUORUM_BUDGET_MILLIS", 0);
+
+    /** One model's reply (or failure) as it arrives. */
+    private record Outcome(String model, OllamaChat.Reply reply, Throwable error, long nanos) {
+    }
+
+    private static String getEnv(String key, String defaultValue) {
+        String v = System.getenv(key);
+        if (v != null && !v.isBlank()) return v.trim();
+        return System.getProperty(key, defaultValue);
+    }
+
+    private static int getIntEnv(String key, int defaultValue) {
+        try {
+            int v = Integer.parseInt(getEnv(key, String.valueOf(defaultValue)));
+            return v > 0 ? v : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public CapabilityResult execute(PluginContext context) {
+        Map<String, Object> input = new HashMap<>(context.getOriginalInput());
+        // Context tokens belong to one model; they mean nothing to the others.
+        input.remove("context");
+        List<String> models = models(input);
+        int quorum = Math.min(intInput(input, "quorum", DEFAULT_QUORUM), models.size());
+        long budgetNanos = TimeUnit.MILLISECONDS.toNanos(intInput(input, "budgetMillis", (int) DEFAULT_BUDGET_MILLIS));
+        List<Map<String, Object>> messages = OllamaChat.messages(input);
+        String question = messages == null ? question(input) : null;
+        if (models.isEmpty() || (messages == null && question.isBlank())) {
+            context.putOutput("response", "");
+            context.putOutput("result", "");
+            return CapabilityResult.builder().capabilityName(NAME).data(new HashMap<>(context.getCurrentPluginOutput())).build();
+        }
+
+        long start = System.nanoTime();
+        BlockingQueue<Outcome> arrivals = new LinkedBlockingQueue<>();
+        Map<String, CompletableFuture<OllamaChat.Reply>> calls = new LinkedHashMap<>();
+        List<Map<String, Object>> responses = new ArrayList<>();
+        Map<String, String> errors = new LinkedHashMap<>();
+        try {
+            for (String model : models) {
+                Map<String, Object> body = messages != null
+                        ? OllamaChat.chatBody(model, messages, false, input)
+                        : OllamaChat.generateBody(model, question, false, input);
+                String path = messages != null ? OllamaChat.CHAT_PATH : OllamaChat.GENERATE_PATH;
+                CompletableFuture<OllamaChat.Reply> call = OllamaTransport.sendSharedAsync(model, path, MAPPER.writeValueAsBytes(body));
+                call.whenComplete((r, e) -> arrivals.add(new Outcome(model, r, e, System.nanoTime() - start)));
+                calls.put(model, call);
+            }
+            int pending = calls.size();
+            while (pending > 0 && responses.size() < quorum) {
+                Outcome o;
+                if (budgetNanos <= 0 || responses.isEmpty()) {
+                    o = arrivals.take();
+                } else {
+                    o = arrivals.poll(budgetNanos - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+                    if (o == null) break;
+                }
+                pending--;
+                String error = error(o);
+                if (error != null) {
+                    errors.put(label(o.model()), error);
+                    continue;
+                }
+                Map<String, Object> answer = new LinkedHashMap<>();
+                answer.put("modelLabel", label(o.model()));
+                answer.put("model", o.model());
+                answer.put("result", o.reply().content());
+                answer.put("responseMillis", TimeUnit.NANOSECONDS.toMillis(o.nanos()));
+                responses.add(answer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            context.putOutput("error", "Interrupted while waiting for Ollama models");
+        } catch (Exception e) {
+            context.putOutput("error", "Error calling Ollama: " + e.getMessage());
+        } finally {
+            List<String> cancelled = new ArrayList<>();
+            calls.forEach((model, call) -> {
+                if (call.cancel(true)) cancelled.add(label(model));
+            });
+            context.putOutput("cancelledModels", cancelled);
+        }
+
+        String response = responses.isEmpty() ? "" : (String) responses.get(0).get("result");
+        if (responses.isEmpty() && !errors.isEmpty() && !context.getCurrentPluginOutput().containsKey("error")) {
+            context.putOutput("error", "No model answered: " + errors);
+        }
+        context.putOutput("response", response);
+        context.putOutput("result", response);
+        if (!responses.isEmpty()) context.putOutput("modelLabel", responses.get(0).get("modelLabel"));
+        context.putOutput("responses", responses);
+        context.putOutput("modelErrors", errors);
+        return CapabilityResult.builder().capabilityName(NAME).data(new HashMap<>(context.getCurrentPluginOutput())).build();
+    }
+
+    @Override
+    public String getRequiredContractVersion() {
+        return CONTRACT_VERSION;
+    }
+
+    @Override
+    public Set<String> getRequiredInputFieldsForPlanner() {
+        return Set.of("question", "messages", "models", "quorum", "budgetMillis");
+    }
+
+    @Override
+    public String getPlannerDescription() {
+        return "Model: asks several Ollama models in parallel and keeps the fastest answers; needs question or messages.";
+    }
+
+    @Override
+    public String getPluginType() {
+        return PluginTypes.MODEL;
+    }
+
+    /** Same labels as the fixed-model plugins: "mistral:latest" → "mistral", "gemma2:2b" stays as is. */
+    static String label(String model) {
+        return model.endsWith(":latest") ? model.substring(0, model.length() - ":latest".length()) : model;
+    }
+
+    private static List<String> models(Map<String, Object> input) {
+        if (input.get("models") instanceof List<?> list && !list.isEmpty()) {
+            List<String> out = new ArrayList<>();
+            for (Object m : list) {
+                if (m != null && !m.toString().isBlank()) out.add(m.toString().trim());
+            }
+            return out;
+        }
+        return DEFAULT_MODELS.stream().filter(m -> !m.isEmpty()).toList();
+    }
+
+    /** Input "question", else the last user message. */
+    private static String question(Map<String, Object> input) {
+        if (input.get("question") instanceof String q && !q.isBlank()) {
+            return q;
+        }
+        if (input.get("messages") instanceof List<?> messages) {
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                if (messages.get(i) instanceof Map<?, ?> msg && "user".equals(msg.get("role")) && msg.get("content") != null) {
+                    return msg.get("content").toString().trim();
+                }
+            }
+        }
+        return "";
+    }
+
+    private static String error(Outcome o) {
+        if (o.error() != null) {
+            Throwable cause = o.error() instanceof CompletionException && o.error().getCause() != null ? o.error().getCause() : o.error();
+            return cause instanceof TimeoutException ? "Error: Ollama did not answer in time" : "Error calling Ollama: " + cause.getMessage();
+        }
+        if (o.reply().error() != null) {
+            return "Error: Ollama returned " + o.reply().error();
+        }
+        return null;
+    }
+
+    private static int intInput(Map<String, Object> input, String key, int defaultValue) {
+        Object v = input.get(key);
+        if (v instanceof Number n && n.intValue() > 0) {
+            return n.intValue();
+        }
+        if (v instanceof String s && !s.isBlank()) {
+            try {
+                int parsed = Integer.parseInt(s.trim());
+                return parsed > 0 ? parsed : defaultValue;
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the fixed-model plugins' models loaded in Ollama so the first call after idle does not pay the model
+ * load. {@link #register} (called when a plugin is constructed) sends an empty /api/generate with keep_alive
+ * OLLAMA_WARMUP_KEEP_ALIVE to the server the pool routes the model to, which loads the model there without
+ * generating, and repeats it every OLLAMA_WARMUP_REFRESH_SECONDS so the model never reaches its unload time.
+ * Loading only where routing sends the model keeps the pool's model affinity instead of filling every server with
+ * every model. Warm-ups complete asynchronously, so one slow load or hung server never delays another model's. OLLAMA_WARMUP_MODELS names further
+ * models (comma-separated) to preload the same way; OLLAMA_WARMUP=false turns it all off.
+ * <p>
+ * {@link #record} classifies each call as cold or warm from Ollama's load_duration and keeps per-model latency
+ * averages for both, so the cost of cold loads stays visible.
+ */
+final class ModelWarmer {
+
+    /** A call whose load_duration exceeds this loaded the model rather than reusing it. */
+    static final long COLD_LOAD_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(getEnv("OLLAMA_WARMUP", "true"));
+    private static final String KEEP_ALIVE = getEnv("OLLAMA_WARMUP_KEEP_ALIVE", "10m");
+    private static final long REFRESH_SECONDS = getIntEnv("OLLAMA_WARMUP_REFRESH_SECONDS", 240);
+    private static final ConcurrentMap<String, Boolean> REGISTERED = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Stats> STATS = new ConcurrentHashMap<>();
+    /** Reason the last warm-up of a model failed; removed when one succeeds. */
+    private static final ConcurrentMap<String, String> ERRORS = new ConcurrentHashMap<>();
+    /** Warm-up still pending per model; a refresh is skipped while the previous one (e.g. a slow cold load) runs. */
+    private static final ConcurrentMap<String, CompletableFuture<?>> PENDING = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ollama-warmup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        for (String model : getEnv("OLLAMA_WARMUP_MODELS", "").split(",")) {
+            if (!model.isBlank()) register(model.trim());
+        }
+    }
+
+    private ModelWarmer() {}
+
+    private static String getEnv(String key, String defaultValue) {
+        String v = System.getenv(key);
+        if (v != null && !v.isBlank()) return v.trim();
+        return System.getProperty(key, defaultValue);
+    }
+
+    private static int getIntEnv(String key, int defaultValue) {
+        try {
+            int v = Integer.parseInt(getEnv(key, String.valueOf(defaultValue)));
+            return v > 0 ? v : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /** Loads {@code model} now (in the background) and refreshes its keep_alive on schedule; repeat calls are no-ops. */
+    static void register(String model) {
+        if (!ENABLED || model == null || REGISTERED.putIfAbsent(model, Boolean.TRUE) != null) {
+            return;
+        }
+        SCHEDULER.scheduleWithFixedDelay(() -> warm(model), 0, REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Empty-prompt /api/generate on the server the pool routes {@code model} to: Ollama loads the model (or resets its
+     * unload timer) and answers at once. Sent outside the transport's limits, so these near-instant calls do not
+     * become the adaptive limiter's latency baseline. Returns without waiting; the outcome is recorded when the reply
+     * arrives or the Ollama timeout passes.
+     */
+    private static void warm(String model) {
+        CompletableFuture<?> previous = PENDING.get(model);
+        if (previous != null && !previous.isDone()) {
+            return;
+        }
+        try {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("model", model);
+            body.put("keep_alive", KEEP_ALIVE.matches("-?\\d+") ? Integer.valueOf(KEEP_ALIVE) : KEEP_ALIVE);
+            byte[] json = OllamaTransport.MAPPER.writeValueAsBytes(body);
+            CompletableFuture<?> warmup = OllamaTransport.sendUnlimitedAsync(model, OllamaChat.GENERATE_PATH, json)
+                    .orTimeout(OllamaModelResolver.getOllamaTimeoutSeconds(), TimeUnit.SECONDS)
+                    .whenComplete((resp, e) -> {
+                        if (resp != null && resp.statusCode() == 200) {
+                            ERRORS.remove(model);
+                        } else if (resp != null) {
+                            ERRORS.put(model, resp.uri().getHost() + ":" + resp.uri().getPort() + ": Ollama returned "
+                                    + resp.statusCode() + " – " + resp.body());
+                        } else {
+                            // Ollama may not be up yet; the next refresh tries again.
+                            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                            ERRORS.put(model, cause instanceof TimeoutException
+                                    ? "no reply within " + OllamaModelResolver.getOllamaTimeoutSeconds() + " s"
+                                    : String.valueOf(cause.getMessage()));
+                        }
+                    });
+            PENDING.put(model, warmup);
+        } catch (Exception e) {
+            ERRORS.put(model, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /** Why the last warm-up of {@code model} failed, or null. */
+    static String lastError(String model) {
+        return ERRORS.get(model);
+    }
+
+    /**
+     * Records one call of {@code model} that took {@code nanos}, with Ollama's load_duration; returns whether it was
+     * cold (paid a model load).
+     */
+    static boolean record(String model, long loadDurationNanos, long nanos) {
+        boolean cold = loadDurationNanos > COLD_LOAD_NANOS;
+        STATS.computeIfAbsent(model, m -> new Stats()).add(cold, nanos);
+        return cold;
+    }
+
+    /** Average cold and warm latency of {@code model} in ms and the number of each, e.g. {@code {coldCalls=1, coldAvgMillis=5400, ...}}. */
+    static Map<String, Long> stats(String model) {
+        Stats s = STATS.get(model);
+        return s != null ? s.snapshot() : Map.of();
+    }
+
+    private static final class Stats {
+        private final LongAdder coldCalls = new LongAdder();
+        private final LongAdder coldNanos = new LongAdder();
+        private final LongAdder warmCalls = new LongAdder();
+        private final LongAdder warmNanos = new LongAdder();
+
+        void add(boolean cold, long nanos) {
+            (cold ? coldCalls : warmCalls).increment();
+            (cold ? coldNanos : warmNanos).add(nanos);
+        }
+
+        Map<String, Long> snapshot() {
+            long cold = coldCalls.sum();
+            long warm = warmCalls.sum();
+            Map<String, Long> out = new LinkedHashMap<>();
+            out.put("coldCalls", cold);
+            out.put("coldAvgMillis", cold == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(coldNanos.sum() / cold));
+            out.put("warmCalls", warm);
+            out.put("warmAvgMillis", warm == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(warmNanos.sum() / warm));
+            return out;
+        }
+    }
+}
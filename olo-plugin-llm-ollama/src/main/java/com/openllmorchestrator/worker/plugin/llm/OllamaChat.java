@@ -0,0 +1,269 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.openllmorchestrator.worker.contract.PluginContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Request helpers shared by the Ollama chat plugins for /api/chat and the keep_alive / context fields.
+ * Sending the whole conversation to /api/chat lets Ollama match the prompt prefix already in its KV cache
+ * instead of re-prefilling a prompt rebuilt around the last user turn; keep_alive keeps the model, and
+ * with it that cache, loaded between turns. Single-question calls still use /api/generate, where the
+ * "context" returned by one call can be passed back on the next.
+ * Env: OLLAMA_CHAT_API (default true; false restores last-user-turn /api/generate), OLLAMA_KEEP_ALIVE.
+ */
+final class OllamaChat {
+
+    static final String CHAT_PATH = "/api/chat";
+    static final String GENERATE_PATH = "/api/generate";
+
+    private static final boolean CHAT_API = !"false".equalsIgnoreCase(getEnv("OLLAMA_CHAT_API", "true"));
+    private static final String DEFAULT_KEEP_ALIVE = getEnv("OLLAMA_KEEP_ALIVE", "");
+
+    private OllamaChat() {}
+
+    private static String getEnv(String key, String defaultValue) {
+        String v = System.getenv(key);
+        if (v != null && !v.isBlank()) return v.trim();
+        return System.getProperty(key, defaultValue);
+    }
+
+    /**
+     * Input "messages" as Ollama chat messages (role, content and images when given), or null when there are
+     * none or OLLAMA_CHAT_API is false; callers then fall back to the question via /api/generate.
+     */
+    static List<Map<String, Object>> messages(Map<String, Object> input) {
+        if (!CHAT_API || input == null || !(input.get("messages") instanceof List<?> list)) {
+            return null;
+        }
+        List<Map<String, Object>> out = new ArrayList<>(list.size());
+        for (Object m : list) {
+            if (!(m instanceof Map<?, ?> msg) || msg.get("role") == null) continue;
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("role", msg.get("role").toString());
+            Object content = msg.get("content");
+            message.put("content", content != null ? content.toString() : "");
+            if (msg.get("images") instanceof List<?> images && !images.isEmpty()) {
+                message.put("images", images);
+            }
+            out.add(message);
+        }
+        return out.isEmpty() ? null : out;
+    }
+
+    /** Index of the last "user" message, or -1. */
+    static int lastUserIndex(List<Map<String, Object>> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if ("user".equals(messages.get(i).get("role"))) return i;
+        }
+        return -1;
+    }
+
+    static Map<String, Object> chatBody(String modelId, List<Map<String, Object>> messages, boolean stream, Map<String, Object> input) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", modelId);
+        body.put("messages", messages);
+        body.put("stream", stream);
+        putKeepAlive(body, input);
+        return body;
+    }
+
+    /** /api/generate body; passes input "context" (token ids from a previous generate call) back to Ollama. */
+    static Map<String, Object> generateBody(String modelId, String prompt, boolean stream, Map<String, Object> input) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", modelId);
+        body.put("prompt", prompt);
+        body.put("stream", stream);
+        putKeepAlive(body, input);
+        if (input != null && input.get("context") instanceof List<?> tokens && !tokens.isEmpty()) {
+            body.put("context", tokens);
+        }
+        return body;
+    }
+
+    /**
+     * The fields the plugins use from a /api/chat or /api/generate response, or from one NDJSON stream chunk:
+     * generated text ("message.content" or "response"), "context" token ids, "load_duration", "prompt_eval_count"
+     * and "prompt_eval_duration" (prompt tokens actually evaluated, i.e. not served from Ollama's KV cache),
+     * "eval_count" (tokens generated), "done", and an error (HTTP status and body, or the "error" field), which is
+     * null on success.
+     */
+    record Reply(String content, int[] context, long loadDurationNanos, int promptEvalCount, long promptEvalNanos,
+                 int evalCount, boolean done, String error) {
+    }
+
+    /**
+     * Reads a response body with a streaming parser, pulling out only the {@link Reply} fields; the rest (timings,
+     * model name, echoed messages) is skipped without building strings or a tree. A non-200 body is kept as text
+     * for the error.
+     */
+    static Reply read(int status, InputStream body) throws IOException {
+        if (status != 200) {
+            return new Reply("", null, 0, 0, 0, 0, true, status + " – " + new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (JsonParser p = OllamaTransport.MAPPER.getFactory().createParser(body)) {
+            return read(p);
+        }
+    }
+
+    /** One NDJSON chunk of a streamed response. */
+    static Reply parse(String line) throws IOException {
+        try (JsonParser p = OllamaTransport.MAPPER.getFactory().createParser(line)) {
+            return read(p);
+        }
+    }
+
+    /**
+     * Body handler for async calls: the body stream is parsed with {@link #read(int, InputStream)} on a transport
+     * executor thread as it arrives, so no byte array of the whole body is built. The response completes once the
+     * reply is parsed; the client's own threads never block on the read.
+     */
+    static HttpResponse.BodyHandler<Reply> replyHandler() {
+        return info -> new ReplySubscriber(info.statusCode(), HttpResponse.BodySubscribers.ofInputStream());
+    }
+
+    private record ReplySubscriber(int status, HttpResponse.BodySubscriber<InputStream> stream)
+            implements HttpResponse.BodySubscriber<Reply> {
+
+        @Override
+        public CompletionStage<Reply> getBody() {
+            return stream.getBody().thenApplyAsync(body -> {
+                try (body) {
+                    return read(status, body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, OllamaTransport.executor());
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            stream.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            stream.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            stream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            stream.onComplete();
+        }
+    }
+
+    private static Reply read(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("unexpected Ollama response");
+        }
+        String response = null;
+        String message = null;
+        String error = null;
+        int[] context = null;
+        long loadDuration = 0;
+        int promptEvalCount = 0;
+        long promptEvalDuration = 0;
+        int evalCount = 0;
+        boolean done = false;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if ("response".equals(field) && value == JsonToken.VALUE_STRING) {
+                response = p.getText();
+            } else if ("message".equals(field) && value == JsonToken.START_OBJECT) {
+                message = "";
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = p.currentName();
+                    if (p.nextToken() == JsonToken.VALUE_STRING && "content".equals(name)) {
+                        message = p.getText();
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+            } else if ("context".equals(field) && value == JsonToken.START_ARRAY) {
+                int[] ids = new int[256];
+                int n = 0;
+                while (p.nextToken() != JsonToken.END_ARRAY) {
+                    if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                    ids[n++] = p.getIntValue();
+                }
+                context = Arrays.copyOf(ids, n);
+            } else if ("load_duration".equals(field) && value.isNumeric()) {
+                loadDuration = p.getLongValue();
+            } else if ("prompt_eval_count".equals(field) && value.isNumeric()) {
+                promptEvalCount = p.getIntValue();
+            } else if ("prompt_eval_duration".equals(field) && value.isNumeric()) {
+                promptEvalDuration = p.getLongValue();
+            } else if ("eval_count".equals(field) && value.isNumeric()) {
+                evalCount = p.getIntValue();
+            } else if ("done".equals(field)) {
+                done = value == JsonToken.VALUE_TRUE;
+            } else if ("error".equals(field) && value == JsonToken.VALUE_STRING) {
+                error = p.getText();
+            } else {
+                p.skipChildren();
+            }
+        }
+        return new Reply(message != null ? message : response != null ? response : "", context, loadDuration,
+                promptEvalCount, promptEvalDuration, evalCount, done, error);
+    }
+
+    /** Outputs the "context" token ids of a final /api/generate response so the next turn can send them back. */
+    static void putContext(PluginContext context, Reply reply) {
+        if (reply != null && reply.context() != null && reply.context().length > 0) {
+            List<Integer> ids = new ArrayList<>(reply.context().length);
+            for (int t : reply.context()) ids.add(t);
+            context.putOutput("context", ids);
+        }
+    }
+
+    /** keep_alive from input "keepAlive" or OLLAMA_KEEP_ALIVE: a duration ("10m") or seconds (-1 keeps the model loaded). */
+    private static void putKeepAlive(Map<String, Object> body, Map<String, Object> input) {
+        Object v = input != null ? input.get("keepAlive") : null;
+        if (v == null || v.toString().isBlank()) {
+            v = DEFAULT_KEEP_ALIVE;
+        }
+        if (v instanceof Number) {
+            body.put("keep_alive", v);
+            return;
+        }
+        String s = v.toString().trim();
+        if (s.isEmpty()) return;
+        body.put("keep_alive", s.matches("-?\\d+") ? (Object) Long.parseLong(s) : s);
+    }
+}
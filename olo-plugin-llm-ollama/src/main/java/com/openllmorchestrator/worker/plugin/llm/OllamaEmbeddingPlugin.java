@@ -0,0 +1,370 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openllmorchestrator.worker.contract.ContractCompatibility;
+import com.openllmorchestrator.worker.contract.PluginContext;
+import com.openllmorchestrator.worker.contract.PlannerInputDescriptor;
+import com.openllmorchestrator.worker.contract.PluginTypeDescriptor;
+import com.openllmorchestrator.worker.contract.PluginTypes;
+import com.openllmorchestrator.olo.OloPlugin;
+import com.openllmorchestrator.olo.PluginDataPaths;
+import com.openllmorchestrator.worker.contract.CapabilityHandler;
+import com.openllmorchestrator.worker.contract.CapabilityResult;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Embedding plugin via Ollama's batch endpoint (/api/embed). Embeds the text of each accumulated
+ * "tokenizedChunks" entry (adding "embedding") and the "question" (as "questionEmbedding"), so the vector
+ * store indexes and queries with model vectors instead of its hashing fallback.
+ * Texts go out in batches of OLLAMA_EMBED_BATCH_SIZE with at most OLLAMA_EMBED_MAX_IN_FLIGHT requests
+ * outstanding; vectors are parsed straight into float[] (no boxed number lists).
+ * Vectors are cached by SHA-256 of (model, text) in {@link EmbeddingCache} under the plugin data dir
+ * (OLO_PLUGIN_DATA_DIR/com.openllm.plugin.llm.ollama.embed/embedding-cache), so re-ingesting a folder only
+ * embeds chunks whose text changed.
+ * Env: OLLAMA_BASE_URL, OLLAMA_EMBED_MODEL, OLLAMA_EMBED_BATCH_SIZE, OLLAMA_EMBED_MAX_IN_FLIGHT,
+ * OLLAMA_EMBED_CACHE, OLLAMA_EMBED_CACHE_ENTRIES, OLLAMA_TIMEOUT_SECONDS.
+ */
+@OloPlugin(
+    id = "com.openllm.plugin.llm.ollama.embed",
+    name = "Ollama Embeddings",
+    version = "1.0.0",
+    description = "Embeds tokenizedChunks and question via Ollama /api/embed in batches. Env: OLLAMA_BASE_URL, OLLAMA_EMBED_MODEL.",
+    capability = { "EMBEDDING" },
+    inputs = {
+        @OloPlugin.Input(name = "tokenizedChunks", type = "array", required = false, description = "Chunks to embed (from tokenizer or folder ingestion)"),
+        @OloPlugin.Input(name = "question", type = "string", required = false, description = "Question to embed for retrieval"),
+        @OloPlugin.Input(name = "embeddingModel", type = "string", required = false, description = "Ollama embedding model (default OLLAMA_EMBED_MODEL)"),
+        @OloPlugin.Input(name = "batchSize", type = "integer", required = false, description = "Texts per /api/embed request (default 64)"),
+        @OloPlugin.Input(name = "maxInFlight", type = "integer", required = false, description = "Concurrent /api/embed requests (default 4)")
+    },
+    outputs = {
+        @OloPlugin.Output(name = "tokenizedChunks", type = "array", description = "Chunks with float[] \"embedding\""),
+        @OloPlugin.Output(name = "questionEmbedding", type = "array", description = "Question vector (float[])"),
+        @OloPlugin.Output(name = "embeddingModel", type = "string", description = "Model used"),
+        @OloPlugin.Output(name = "embeddingDimension", type = "integer", description = "Vector dimension"),
+        @OloPlugin.Output(name = "embeddedCount", type = "integer", description = "Texts embedded"),
+        @OloPlugin.Output(name = "embedRequests", type = "integer", description = "/api/embed calls made"),
+        @OloPlugin.Output(name = "embedCacheHits", type = "integer", description = "Texts served from the embedding cache")
+    }
+)
+public final class OllamaEmbeddingPlugin implements CapabilityHandler, ContractCompatibility, PlannerInputDescriptor, PluginTypeDescriptor {
+
+    private static final String CONTRACT_VERSION = "0.0.1";
+    public static final String NAME = "com.openllmorchestrator.worker.plugin.llm.OllamaEmbeddingPlugin";
+    private static final String PLUGIN_ID = "com.openllm.plugin.llm.ollama.embed";
+    private static final String DEFAULT_MODEL = getEnv("OLLAMA_EMBED_MODEL", "nomic-embed-text");
+    private static final int DEFAULT_BATCH_SIZE = getIntEnv("OLLAMA_EMBED_BATCH_SIZE", 64);
+    private static final int DEFAULT_MAX_IN_FLIGHT = getIntEnv("OLLAMA_EMBED_MAX_IN_FLIGHT", 4);
+    private static final boolean CACHE_ENABLED = !"false".equalsIgnoreCase(getEnv("OLLAMA_EMBED_CACHE", "true"));
+    private static final int CACHE_MEMORY_ENTRIES = getIntEnv("OLLAMA_EMBED_CACHE_ENTRIES", 50_000);
+    private static final ObjectMapper MAPPER = OllamaTransport.MAPPER;
+
+    private static String getEnv(String key, String defaultValue) {
+        String v = System.getenv(key);
+        if (v != null && !v.isBlank()) return v.trim();
+        return System.getProperty(key, defaultValue);
+    }
+
+    private static int getIntEnv(String key, int defaultValue) {
+        try {
+            int v = Integer.parseInt(getEnv(key, String.valueOf(defaultValue)));
+            return v > 0 ? v : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+
+    private static volatile EmbeddingCache cache;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public CapabilityResult execute(PluginContext context) {
+        Map<String, Object> accumulated = context.getAccumulatedOutput();
+        Map<String, Object> input = context.getOriginalInput();
+        String model = stringInput(input, "embeddingModel", DEFAULT_MODEL);
+        int batchSize = intInput(input, "batchSize", DEFAULT_BATCH_SIZE);
+        int maxInFlight = intInput(input, "maxInFlight", DEFAULT_MAX_IN_FLIGHT);
+
+        Object chunksObj = accumulated != null ? accumulated.get("tokenizedChunks") : null;
+        if (chunksObj == null && input != null) {
+            chunksObj = input.get("tokenizedChunks");
+        }
+        String question = input != null && input.get("question") instanceof String q && !q.isBlank() ? q : null;
+
+        List<Map<String, Object>> chunks = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        if (chunksObj instanceof List<?> list) {
+            for (Object c : list) {
+                if (!(c instanceof Map<?, ?> chunk)) continue;
+                Map<String, Object> copy = new HashMap<>();
+                chunk.forEach((k, v) -> copy.put(String.valueOf(k), v));
+                chunks.add(copy);
+                Object text = chunk.get("text") != null ? chunk.get("text") : chunk.get("content");
+                texts.add(text != null ? text.toString() : null);
+            }
+        }
+        List<String> pending = new ArrayList<>();
+        for (String t : texts) {
+            if (t != null) pending.add(t);
+        }
+        if (question != null) {
+            pending.add(question);
+        }
+        context.putOutput("embeddingModel", model);
+        if (pending.isEmpty()) {
+            context.putOutput("embeddedCount", 0);
+            return CapabilityResult.builder().capabilityName(NAME).data(new HashMap<>(context.getCurrentPluginOutput())).build();
+        }
+
+        EmbeddingCache embeddingCache = null;
+        if (CACHE_ENABLED) {
+            try {
+                embeddingCache = cache();
+            } catch (IOException e) {
+                // Embed without the cache rather than failing the ingestion.
+                context.putOutput("embedCacheError", e.getMessage());
+            }
+        }
+        try {
+            EmbedResult result = embedCached(embeddingCache, model, pending, batchSize, maxInFlight);
+            int next = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                if (texts.get(i) != null) {
+                    chunks.get(i).put("embedding", result.vectors()[next++]);
+                }
+            }
+            if (!chunks.isEmpty()) {
+                context.putOutput("tokenizedChunks", chunks);
+            }
+            if (question != null) {
+                context.putOutput("questionEmbedding", result.vectors()[next]);
+            }
+            context.putOutput("embeddingDimension", result.vectors()[0].length);
+            context.putOutput("embeddedCount", pending.size());
+            context.putOutput("embedRequests", result.requests());
+            context.putOutput("embedCacheHits", result.cacheHits());
+        } catch (IOException | RuntimeException e) {
+            // Leave chunks without embeddings so the vector store falls back consistently for the whole batch.
+            context.putOutput("error", "Failed to embed via Ollama: " + e.getMessage());
+            context.putOutput("embeddedCount", 0);
+        }
+        return CapabilityResult.builder().capabilityName(NAME).data(new HashMap<>(context.getCurrentPluginOutput())).build();
+    }
+
+    @Override
+    public String getRequiredContractVersion() {
+        return CONTRACT_VERSION;
+    }
+
+    @Override
+    public Set<String> getRequiredInputFieldsForPlanner() {
+        return Set.of("tokenizedChunks", "question");
+    }
+
+    @Override
+    public String getPlannerDescription() {
+        return "Embedding: vectorise tokenizedChunks and/or question via Ollama before the vector store.";
+    }
+
+    @Override
+    public String getPluginType() {
+        return PluginTypes.FILTER;
+    }
+
+    private record EmbedResult(float[][] vectors, int requests, int cacheHits) {}
+
+    private static EmbeddingCache cache() throws IOException {
+        EmbeddingCache c = cache;
+        if (c == null) {
+            synchronized (OllamaEmbeddingPlugin.class) {
+                c = cache;
+                if (c == null) {
+                    c = EmbeddingCache.open(PluginDataPaths.getPluginDir(PLUGIN_ID).resolve("embedding-cache"), CACHE_MEMORY_ENTRIES);
+                    cache = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Embeds {@code texts} in order, serving cached vectors and sending only the misses to Ollama (each
+     * distinct text once). Fresh vectors are written to the cache and flushed before returning.
+     */
+    private static EmbedResult embedCached(EmbeddingCache cache, String model, List<String> texts,
+                                           int batchSize, int maxInFlight) throws IOException {
+        if (cache == null) {
+            return embed(model, texts, batchSize, maxInFlight);
+        }
+        float[][] vectors = new float[texts.size()][];
+        Map<EmbeddingCache.Key, List<Integer>> misses = new LinkedHashMap<>();
+        int hits = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            EmbeddingCache.Key key = EmbeddingCache.key(model, texts.get(i));
+            float[] v = cache.get(key);
+            if (v != null) {
+                vectors[i] = v;
+                hits++;
+            } else {
+                misses.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            return new EmbedResult(vectors, 0, hits);
+        }
+        List<String> missTexts = new ArrayList<>(misses.size());
+        for (List<Integer> positions : misses.values()) {
+            missTexts.add(texts.get(positions.get(0)));
+        }
+        EmbedResult fresh = embed(model, missTexts, batchSize, maxInFlight);
+        int next = 0;
+        for (Map.Entry<EmbeddingCache.Key, List<Integer>> miss : misses.entrySet()) {
+            float[] v = fresh.vectors()[next++];
+            cache.put(miss.getKey(), v);
+            for (int i : miss.getValue()) {
+                vectors[i] = v;
+            }
+        }
+        cache.flush();
+        return new EmbedResult(vectors, fresh.requests(), hits);
+    }
+
+    /**
+     * Embeds {@code texts} in order. Batches are sent asynchronously; a semaphore keeps at most
+     * {@code maxInFlight} requests outstanding so a large folder neither serializes on one call per chunk
+     * nor floods the Ollama server.
+     */
+    private static EmbedResult embed(String model, List<String> texts, int batchSize, int maxInFlight) throws IOException {
+        float[][] vectors = new float[texts.size()][];
+        Semaphore permits = new Semaphore(maxInFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        try {
+            for (int from = 0; from < texts.size(); from += batchSize) {
+                int start = from;
+                List<String> batch = texts.subList(from, Math.min(texts.size(), from + batchSize));
+                byte[] json = MAPPER.writeValueAsBytes(Map.of("model", model, "input", batch));
+                permits.acquire();
+                if (failure.get() != null) {
+                    // Fail fast instead of sending the rest of a large ingestion to a broken server.
+                    permits.release();
+                    break;
+                }
+                calls.add(OllamaTransport.sendAsync(model, "/api/embed", json, HttpResponse.BodyHandlers.ofByteArray())
+                        .thenAccept(resp -> {
+                            if (resp.statusCode() != 200) {
+                                throw new CompletionException(new IOException("Ollama returned " + resp.statusCode() + " – "
+                                        + new String(resp.body(), StandardCharsets.UTF_8)));
+                            }
+                            try {
+                                float[][] got = parseEmbeddings(resp.body());
+                                if (got.length != batch.size()) {
+                                    throw new IOException("expected " + batch.size() + " embeddings, got " + got.length);
+                                }
+                                System.arraycopy(got, 0, vectors, start, got.length);
+                            } catch (IOException e) {
+                                throw new CompletionException(e);
+                            }
+                        })
+                        .whenComplete((r, e) -> {
+                            if (e != null) failure.compareAndSet(null, e);
+                            permits.release();
+                        }));
+            }
+            CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while embedding", e);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IOException io) throw io;
+            throw new IOException(cause.getMessage(), cause);
+        }
+        return new EmbedResult(vectors, calls.size(), 0);
+    }
+
+    /** Reads {@code {"embeddings": [[f, ...], ...]}} into float arrays without building a JSON tree. */
+    static float[][] parseEmbeddings(byte[] body) throws IOException {
+        List<float[]> out = new ArrayList<>();
+        try (JsonParser p = MAPPER.getFactory().createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("unexpected /api/embed response");
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                JsonToken value = p.nextToken();
+                if (!"embeddings".equals(field) || value != JsonToken.START_ARRAY) {
+                    p.skipChildren();
+                    continue;
+                }
+                float[] buf = new float[1024];
+                while (p.nextToken() == JsonToken.START_ARRAY) {
+                    int n = 0;
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        if (n == buf.length) buf = Arrays.copyOf(buf, n * 2);
+                        buf[n++] = p.getFloatValue();
+                    }
+                    out.add(Arrays.copyOf(buf, n));
+                }
+            }
+        }
+        return out.toArray(new float[0][]);
+    }
+
+    private static String stringInput(Map<String, Object> input, String key, String defaultValue) {
+        Object v = input != null ? input.get(key) : null;
+        return v != null && !v.toString().isBlank() ? v.toString().trim() : defaultValue;
+    }
+
+    private static int intInput(Map<String, Object> input, String key, int defaultValue) {
+        Object v = input != null ? input.get(key) : null;
+        if (v instanceof Number n && n.intValue() > 0) {
+            return n.intValue();
+        }
+        if (v instanceof String s && !s.isBlank()) {
+            try {
+                int parsed = Integer.parseInt(s.trim());
+                return parsed > 0 ? parsed : defaultValue;
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+}
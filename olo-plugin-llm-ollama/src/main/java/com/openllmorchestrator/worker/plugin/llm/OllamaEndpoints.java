@@ -0,0 +1,237 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of Ollama servers (comma-separated OLLAMA_BASE_URL) with least-outstanding-requests routing.
+ * <ul>
+ *   <li>Model affinity: a server known to have the model loaded (from GET /api/ps, refreshed every
+ *       OLLAMA_PS_REFRESH_SECONDS, and from successful requests) is preferred while it has at most
+ *       OLLAMA_AFFINITY_SLACK more outstanding requests than the least loaded server, so a request does not
+ *       force a cold model load elsewhere.</li>
+ *   <li>Passive health: OLLAMA_EJECT_FAILURES consecutive failures (connection errors, timeouts, 5xx) eject a
+ *       server for OLLAMA_EJECT_SECONDS, doubling on each repeated ejection up to 32 times that. When the time
+ *       is up it is probed with GET /api/ps and only routed to again once the probe succeeds.</li>
+ * </ul>
+ * If every server is ejected, requests go to the one whose ejection ends first rather than failing outright.
+ */
+final class OllamaEndpoints {
+
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+
+    private final List<Endpoint> endpoints;
+    private final HttpClient client;
+    private final ObjectMapper mapper;
+    private final int ejectAfterFailures;
+    private final long ejectNanos;
+    private final int affinitySlack;
+    private final long psRefreshNanos;
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    OllamaEndpoints(String baseUrls, HttpClient client, ObjectMapper mapper,
+                    int ejectAfterFailures, long ejectNanos, int affinitySlack, long psRefreshNanos) {
+        List<Endpoint> list = new ArrayList<>();
+        for (String url : baseUrls.split(",")) {
+            String u = url.trim();
+            while (u.endsWith("/")) u = u.substring(0, u.length() - 1);
+            if (!u.isEmpty()) list.add(new Endpoint(u));
+        }
+        if (list.isEmpty()) {
+            throw new IllegalArgumentException("no Ollama endpoint in OLLAMA_BASE_URL: " + baseUrls);
+        }
+        this.endpoints = List.copyOf(list);
+        this.client = client;
+        this.mapper = mapper;
+        this.ejectAfterFailures = ejectAfterFailures;
+        this.ejectNanos = ejectNanos;
+        this.affinitySlack = affinitySlack;
+        this.psRefreshNanos = psRefreshNanos;
+    }
+
+    List<Endpoint> all() {
+        return endpoints;
+    }
+
+    /** Server for a request for {@code model} (may be null); the caller must {@link Endpoint#begin} / {@link Endpoint#end} it. */
+    Endpoint choose(String model) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.nanoTime();
+        Endpoint best = null;
+        Endpoint bestAffine = null;
+        Endpoint soonest = null;
+        // Start the scan at a rotating offset so ties spread across servers.
+        int start = Math.floorMod(rotation.getAndIncrement(), endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint e = endpoints.get((start + i) % endpoints.size());
+            if (!e.routable()) {
+                if (e.probeDue(now)) refreshModels(e, true);
+                if (soonest == null || e.ejectedUntil < soonest.ejectedUntil) soonest = e;
+                continue;
+            }
+            if (now - e.modelsRefreshedAt > psRefreshNanos && e.startRefresh()) {
+                refreshModels(e, false);
+            }
+            if (best == null || e.outstanding.get() < best.outstanding.get()) best = e;
+            if (model != null && e.models.contains(model)
+                    && (bestAffine == null || e.outstanding.get() < bestAffine.outstanding.get())) {
+                bestAffine = e;
+            }
+        }
+        if (best == null) {
+            return soonest;
+        }
+        if (bestAffine != null && bestAffine.outstanding.get() <= best.outstanding.get() + affinitySlack) {
+            return bestAffine;
+        }
+        return best;
+    }
+
+    /** GET /api/ps: records the loaded models; as a probe, reinstates the server on success or re-ejects it. */
+    private void refreshModels(Endpoint e, boolean probe) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(e.baseUrl + "/api/ps"))
+                .timeout(PROBE_TIMEOUT)
+                .GET()
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((resp, err) -> {
+            boolean ok = err == null && resp.statusCode() == 200;
+            if (ok) {
+                try {
+                    Set<String> loaded = ConcurrentHashMap.newKeySet();
+                    for (JsonNode m : mapper.readTree(resp.body()).path("models")) {
+                        String name = m.path("name").asText(m.path("model").asText(""));
+                        if (!name.isEmpty()) loaded.add(name);
+                    }
+                    e.models.retainAll(loaded);
+                    e.models.addAll(loaded);
+                } catch (Exception parseError) {
+                    // Health is what matters for a probe; keep the previous model list.
+                }
+            }
+            e.refreshed(ok, probe, ejectNanos);
+        });
+    }
+
+    /** One Ollama server: outstanding request count, loaded models and health state. */
+    final class Endpoint {
+        final String baseUrl;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final Set<String> models = ConcurrentHashMap.newKeySet();
+        private volatile long modelsRefreshedAt = System.nanoTime() - psRefreshNanos - 1;
+        private volatile long ejectedUntil;
+        private int consecutiveFailures;
+        private int ejections;
+        private boolean refreshing;
+
+        private Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        URI uri(String path) {
+            return URI.create(baseUrl + path);
+        }
+
+        void begin() {
+            outstanding.incrementAndGet();
+        }
+
+        /**
+         * Ends a request: {@code failed} for connection errors, timeouts and 5xx; {@code modelMissing} for a
+         * 404 (model not on this server). Success marks {@code model} as loaded here.
+         */
+        void end(String model, boolean failed, boolean modelMissing) {
+            outstanding.decrementAndGet();
+            if (model != null) {
+                if (modelMissing) {
+                    models.remove(model);
+                } else if (!failed) {
+                    models.add(model);
+                }
+            }
+            synchronized (this) {
+                if (!failed) {
+                    consecutiveFailures = 0;
+                    ejections = 0;
+                } else if (++consecutiveFailures >= ejectAfterFailures && ejectedUntil == 0) {
+                    eject(ejectNanos);
+                }
+            }
+        }
+
+        /**
+         * Ends a request that says nothing about the server's health (rejected locally, or given up by the caller
+         * before a response): the failure streak and ejection backoff are left as they are.
+         */
+        void abandon() {
+            outstanding.decrementAndGet();
+        }
+
+        boolean routable() {
+            return ejectedUntil == 0;
+        }
+
+        private synchronized boolean probeDue(long now) {
+            return ejectedUntil != 0 && now >= ejectedUntil && startRefresh();
+        }
+
+        private synchronized boolean startRefresh() {
+            if (refreshing) return false;
+            refreshing = true;
+            return true;
+        }
+
+        private synchronized void refreshed(boolean ok, boolean probe, long baseEjectNanos) {
+            refreshing = false;
+            modelsRefreshedAt = System.nanoTime();
+            if (!probe) {
+                return;
+            }
+            if (ok) {
+                ejectedUntil = 0;
+                consecutiveFailures = 0;
+            } else {
+                eject(baseEjectNanos);
+            }
+        }
+
+        /** Caller holds the lock. */
+        private void eject(long baseNanos) {
+            ejectedUntil = Math.max(1, System.nanoTime() + (baseNanos << Math.min(ejections, 5)));
+            ejections++;
+        }
+
+        @Override
+        public String toString() {
+            return baseUrl + (ejectedUntil != 0 ? " (ejected)" : "") + " outstanding=" + outstanding.get() + " models=" + models;
+        }
+    }
+}
@@ -0,0 +1,586 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP transport shared by all Ollama plugins (including the fixed-model plugins built on
+ * FixedModelChatPlugin): one HttpClient, so calls reuse pooled keep-alive connections, and one ObjectMapper.
+ * <ul>
+ *   <li>Endpoints: OLLAMA_BASE_URL may list several servers, comma-separated; each request is routed by
+ *       {@link OllamaEndpoints} (least outstanding requests, model affinity, ejection of failing servers).</li>
+ *   <li>Executor: virtual threads by default; OLLAMA_HTTP_EXECUTOR=platform uses a cached pool of daemon threads.
+ *       Non-streaming chat/generate calls are asynchronous end to end ({@link #sendSharedAsync}); the blocking
+ *       methods suit callers that are themselves on virtual threads.</li>
+ *   <li>Keep-alive pool: OLLAMA_HTTP_POOL_SIZE and OLLAMA_HTTP_KEEPALIVE_SECONDS set the JDK client's
+ *       jdk.httpclient.connectionPoolSize / jdk.httpclient.keepalive.timeout unless given on the command line.
+ *       The JDK reads them once, so they only apply if no HttpClient was created earlier in the JVM.</li>
+ *   <li>Per-host limit: at most OLLAMA_MAX_CONCURRENT_PER_HOST requests run against one host:port; further
+ *       callers wait (up to their request timeout) instead of piling onto the GPU box.</li>
+ *   <li>Per-model adaptive limit ({@link AdaptiveLimiter}), taken before the host slot: OLLAMA_LIMIT_INITIAL,
+ *       OLLAMA_LIMIT_MIN, OLLAMA_LIMIT_MAX bound it and OLLAMA_LIMIT_TOLERANCE is the latency ratio it accepts; OLLAMA_LIMIT_QUEUE callers may wait up to
+ *       OLLAMA_LIMIT_QUEUE_TIMEOUT_SECONDS before being rejected. OLLAMA_ADAPTIVE_LIMIT=false turns it off.</li>
+ *   <li>Coalescing: {@link #sendSharedAsync} callers with byte-identical bodies for the same path while one is in
+ *       flight wait for that call's response instead of sending their own. OLLAMA_COALESCE=false turns it off.</li>
+ *   <li>Micro-batching: the calls that do go out pass a {@link MicroBatcher} lane per model and server, which
+ *       sends at once while fewer than OLLAMA_NUM_PARALLEL of them are in flight and holds a call for up to
+ *       OLLAMA_BATCH_WINDOW_MILLIS only while those slots are full; the limits above still apply to each call.
+ *       OLLAMA_BATCHING=false sends each call directly.</li>
+ * </ul>
+ * HTTP/1.1 is forced: Ollama serves plain http and never upgrades to h2c.
+ * Env: OLLAMA_BASE_URL, OLLAMA_CONNECT_TIMEOUT_SECONDS (default 10), plus the above.
+ */
+final class OllamaTransport {
+
+    /**
+     * Parser buffers come from a pool shared by all threads: Jackson's default pool is per thread, and the transport
+     * parses on a new virtual thread per call, so every parse would allocate fresh buffers.
+     */
+    static final ObjectMapper MAPPER = new ObjectMapper(JsonFactory.builder().recyclerPool(JsonRecyclerPools.sharedLockFreePool()).build());
+
+    private static final int MAX_PER_HOST = getIntEnv("OLLAMA_MAX_CONCURRENT_PER_HOST", 16);
+    private static final ExecutorService EXECUTOR;
+    private static final HttpClient CLIENT;
+    private static final ConcurrentMap<String, Semaphore> HOST_LIMITS = new ConcurrentHashMap<>();
+    private static final boolean ADAPTIVE_LIMIT = !"false".equalsIgnoreCase(getEnv("OLLAMA_ADAPTIVE_LIMIT", "true"));
+    private static final int LIMIT_INITIAL = getIntEnv("OLLAMA_LIMIT_INITIAL", 4);
+    private static final int LIMIT_MIN = getIntEnv("OLLAMA_LIMIT_MIN", 1);
+    private static final int LIMIT_MAX = getIntEnv("OLLAMA_LIMIT_MAX", 32);
+    private static final double LIMIT_TOLERANCE = getDoubleEnv("OLLAMA_LIMIT_TOLERANCE", 2.0);
+    private static final int LIMIT_QUEUE = getIntEnv("OLLAMA_LIMIT_QUEUE", 64);
+    private static final long LIMIT_QUEUE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(getIntEnv("OLLAMA_LIMIT_QUEUE_TIMEOUT_SECONDS", 60));
+    private static final ConcurrentMap<String, AdaptiveLimiter> MODEL_LIMITS = new ConcurrentHashMap<>();
+    private static final OllamaEndpoints ENDPOINTS;
+    private static final boolean COALESCE = !"false".equalsIgnoreCase(getEnv("OLLAMA_COALESCE", "true"));
+    /** Leader's call per (path, body) of the non-streaming calls in flight. */
+    private static final ConcurrentMap<ContentKey, Shared> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final LongAdder COALESCED = new LongAdder();
+    /** Null when OLLAMA_BATCHING=false. */
+    private static final MicroBatcher BATCHER = "false".equalsIgnoreCase(getEnv("OLLAMA_BATCHING", "true")) ? null
+            : new MicroBatcher(TimeUnit.MILLISECONDS.toNanos(getIntEnv("OLLAMA_BATCH_WINDOW_MILLIS", 10)),
+                    getIntEnv("OLLAMA_NUM_PARALLEL", 4));
+
+    static {
+        setDefaultProperty("jdk.httpclient.connectionPoolSize", getEnv("OLLAMA_HTTP_POOL_SIZE", ""));
+        setDefaultProperty("jdk.httpclient.keepalive.timeout", getEnv("OLLAMA_HTTP_KEEPALIVE_SECONDS", ""));
+        EXECUTOR = "platform".equalsIgnoreCase(getEnv("OLLAMA_HTTP_EXECUTOR", "virtual"))
+                ? Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "ollama-http");
+                    t.setDaemon(true);
+                    return t;
+                })
+                : Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ollama-http-", 0).factory());
+        CLIENT = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(getIntEnv("OLLAMA_CONNECT_TIMEOUT_SECONDS", 10)))
+                .executor(EXECUTOR)
+                .build();
+        ENDPOINTS = new OllamaEndpoints(getEnv("OLLAMA_BASE_URL", "http://localhost:11434"), CLIENT, MAPPER,
+                getIntEnv("OLLAMA_EJECT_FAILURES", 3),
+                TimeUnit.SECONDS.toNanos(getIntEnv("OLLAMA_EJECT_SECONDS", 30)),
+                getIntEnv("OLLAMA_AFFINITY_SLACK", 4),
+                TimeUnit.SECONDS.toNanos(getIntEnv("OLLAMA_PS_REFRESH_SECONDS", 30)));
+    }
+
+    private OllamaTransport() {}
+
+    private static String getEnv(String key, String defaultValue) {
+        String v = System.getenv(key);
+        if (v != null && !v.isBlank()) return v.trim();
+        return System.getProperty(key, defaultValue);
+    }
+
+    private static int getIntEnv(String key, int defaultValue) {
+        try {
+            int v = Integer.parseInt(getEnv(key, String.valueOf(defaultValue)));
+            return v > 0 ? v : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double getDoubleEnv(String key, double defaultValue) {
+        try {
+            double v = Double.parseDouble(getEnv(key, String.valueOf(defaultValue)));
+            return v > 0 ? v : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static void setDefaultProperty(String key, String value) {
+        if (!value.isEmpty() && System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /**
+     * JSON POST of {@code json} to {@code path} for {@code model} on the server chosen by the endpoint pool,
+     * within the model's and the server's limits; the slots are held until the body has been read by
+     * {@code handler}.
+     */
+    static <T> HttpResponse<T> send(String model, String path, byte[] json, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        try (Permit permit = acquire(model, path, json)) {
+            HttpResponse<T> response = CLIENT.send(permit.request(), handler);
+            permit.complete(response.statusCode());
+            return response;
+        }
+    }
+
+    /** Reads a response body; runs while the request's slots are still held. */
+    @FunctionalInterface
+    interface BodyReader<R> {
+        R read(int status, InputStream body) throws IOException;
+    }
+
+    /**
+     * Like {@link #send} but hands the body to {@code reader} as a stream, so it can be parsed as it arrives
+     * instead of being buffered into a String first. The slots are held, and the latency measured, until the
+     * reader returns; a reader that fails counts like a failed request.
+     */
+    static <R> R exchange(String model, String path, byte[] json, BodyReader<R> reader) throws IOException, InterruptedException {
+        try (Permit permit = acquire(model, path, json)) {
+            HttpResponse<InputStream> response = CLIENT.send(permit.request(), HttpResponse.BodyHandlers.ofInputStream());
+            R result;
+            try (InputStream body = response.body()) {
+                result = reader.read(response.statusCode(), body);
+            }
+            permit.complete(response.statusCode(), result instanceof OllamaChat.Reply reply ? reply : null);
+            return result;
+        }
+    }
+
+    /**
+     * Non-streaming chat or generate call read into an {@link OllamaChat.Reply}: {@link #sendSharedAsync} awaited on
+     * the calling thread. Interrupting the caller cancels its call.
+     */
+    static OllamaChat.Reply sendShared(String model, String path, byte[] json) throws IOException, InterruptedException {
+        return await(sendSharedAsync(model, path, json));
+    }
+
+    /**
+     * Non-blocking {@link #sendShared}, shared between concurrent identical calls: the body already carries model,
+     * prompt or messages, options and keep_alive, so equal (path, body) means the same request. The first caller
+     * sends it; callers arriving before it completes get the same reply, or the same exception. Nothing is kept once
+     * the call completes, so there is no staleness.
+     * <p>
+     * The caller's thread is never blocked: while the call waits for a slot only a transport executor thread
+     * (virtual by default) waits, and none does while it is in flight or queued for a batch. The returned future
+     * fails with a
+     * {@link TimeoutException} if the reply has not arrived within the Ollama timeout, queueing included.
+     * Cancelling it, or the timeout, abandons the call; the shared request is aborted once every caller waiting
+     * on it has gone.
+     */
+    static CompletableFuture<OllamaChat.Reply> sendSharedAsync(String model, String path, byte[] json) {
+        long timeoutSeconds = OllamaModelResolver.getOllamaTimeoutSeconds();
+        if (!COALESCE) {
+            CompletableFuture<OllamaChat.Reply> call = dispatchAsync(model, path, json);
+            CompletableFuture<OllamaChat.Reply> reply = call.copy().orTimeout(timeoutSeconds, TimeUnit.SECONDS);
+            reply.whenComplete((r, e) -> {
+                if (e != null) call.cancel(true);
+            });
+            return reply;
+        }
+        ContentKey key = ContentKey.of(path, json);
+        Shared[] joined = new Shared[1];
+        boolean[] leader = new boolean[1];
+        IN_FLIGHT.compute(key, (k, current) -> {
+            Shared s = current;
+            if (s == null || s.call.isDone()) {
+                s = new Shared();
+                leader[0] = true;
+            }
+            s.waiters++;
+            joined[0] = s;
+            return s;
+        });
+        Shared shared = joined[0];
+        if (leader[0]) {
+            CompletableFuture<OllamaChat.Reply> call = dispatchAsync(model, path, json);
+            call.whenComplete((r, e) -> {
+                if (e != null) shared.call.completeExceptionally(unwrap(e));
+                else shared.call.complete(r);
+            });
+            shared.call.whenComplete((r, e) -> {
+                IN_FLIGHT.remove(key, shared);
+                if (shared.call.isCancelled()) call.cancel(true);
+            });
+        } else {
+            COALESCED.increment();
+        }
+        CompletableFuture<OllamaChat.Reply> reply = shared.call.copy().orTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        reply.whenComplete((r, e) -> {
+            if (e != null && !shared.call.isDone()) {
+                boolean[] last = new boolean[1];
+                IN_FLIGHT.compute(key, (k, current) -> {
+                    if (current == shared && --shared.waiters == 0) {
+                        last[0] = true;
+                        return null;
+                    }
+                    return current;
+                });
+                // Outside compute: cancelling runs the leader's completion, which removes the key itself.
+                if (last[0]) shared.call.cancel(true);
+            }
+        });
+        return reply;
+    }
+
+    /** One coalesced call and the number of callers still waiting for it (only changed inside {@code IN_FLIGHT.compute}). */
+    private static final class Shared {
+        final CompletableFuture<OllamaChat.Reply> call = new CompletableFuture<>();
+        int waiters;
+    }
+
+    /** Through the model's {@link MicroBatcher} lane when batching is on, else straight to {@link #sendAsync}. */
+    private static CompletableFuture<OllamaChat.Reply> dispatchAsync(String model, String path, byte[] json) {
+        if (BATCHER != null && model != null) {
+            return BATCHER.submit(model, path, json);
+        }
+        CompletableFuture<HttpResponse<OllamaChat.Reply>> call = sendAsync(model, path, json, OllamaChat.replyHandler());
+        CompletableFuture<OllamaChat.Reply> reply = call.thenApply(HttpResponse::body);
+        reply.whenComplete((r, e) -> {
+            if (e != null) call.cancel(true);
+        });
+        return reply;
+    }
+
+    /**
+     * Waits for {@code future} on the calling thread, cancelling it if the thread is interrupted, and rethrows its
+     * failure as the exception the blocking API would have thrown.
+     */
+    static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof TimeoutException) {
+                throw new HttpTimeoutException("Ollama call did not complete within "
+                        + OllamaModelResolver.getOllamaTimeoutSeconds() + " s");
+            }
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof InterruptedException) throw new IOException("Ollama call was interrupted", cause);
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+
+    /** The failure behind the CompletionException / UncheckedIOException wrappers of the async pipeline. */
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof UncheckedIOException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /** The transport executor (virtual threads unless OLLAMA_HTTP_EXECUTOR=platform), for work that may block. */
+    static Executor executor() {
+        return EXECUTOR;
+    }
+
+    /** Calls answered by another caller's in-flight request since startup (see {@link #sendShared}). */
+    static long coalescedCount() {
+        return COALESCED.sum();
+    }
+
+    /**
+     * Async {@link #send}: waits for slots on a transport executor thread (virtual by default), then sends without
+     * blocking. Completing the returned future from outside, by cancelling it or through {@code orTimeout},
+     * interrupts that wait, which leaves the limiter's queue and the host semaphore at once. If the request was
+     * already sent it is aborted instead and its slots are given back. Neither counts against the server's health
+     * or the model's limit.
+     */
+    static <T> CompletableFuture<HttpResponse<T>> sendAsync(String model, String path, byte[] json, HttpResponse.BodyHandler<T> handler) {
+        return sendAsync(model, null, path, json, handler);
+    }
+
+    /** {@link #sendAsync} to {@code endpoint}, or to the server the pool picks once the call runs when null. */
+    static <T> CompletableFuture<HttpResponse<T>> sendAsync(String model, OllamaEndpoints.Endpoint endpoint, String path, byte[] json,
+                                                            HttpResponse.BodyHandler<T> handler) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        CompletableFuture<Permit> acquired = new CompletableFuture<>();
+        Future<?> acquiring = EXECUTOR.submit(() -> {
+            try {
+                acquired.complete(acquire(model, endpoint, path, json));
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                acquired.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((r, e) -> {
+            if (!acquired.isDone()) acquiring.cancel(true);
+        });
+        acquired.whenComplete((permit, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (result.isDone()) {
+                permit.cancel();
+                permit.close();
+                return;
+            }
+            CompletableFuture<HttpResponse<T>> call = CLIENT.sendAsync(permit.request(), handler);
+            call.whenComplete((r, e) -> {
+                if (r != null && r.body() instanceof OllamaChat.Reply reply) permit.complete(r.statusCode(), reply);
+                else if (r != null) permit.complete(r.statusCode());
+                permit.close();
+                if (r != null) result.complete(r);
+                else result.completeExceptionally(e);
+            });
+            result.whenComplete((r, e) -> {
+                if (!call.isDone()) {
+                    permit.cancel();
+                    call.cancel(true);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * JSON POST of {@code json} to {@code path} on the server the pool routes {@code model} to, outside the model and
+     * host limits and without counting toward the server's health, like the /api/ps probes: for housekeeping calls
+     * such as warm-ups, whose latency says nothing about load and must not become a limiter's baseline. A 200 marks
+     * {@code model} as loaded on that server, so later calls prefer it. The response's URI names the server.
+     */
+    static CompletableFuture<HttpResponse<String>> sendUnlimitedAsync(String model, String path, byte[] json) {
+        OllamaEndpoints.Endpoint endpoint = ENDPOINTS.choose(model);
+        return CLIENT.sendAsync(unlimitedRequest(endpoint, path, json), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .whenComplete((r, e) -> {
+                    if (r != null && r.statusCode() == 200 && model != null) endpoint.models.add(model);
+                });
+    }
+
+    /**
+     * Like {@link #exchange}, but outside the limits and health accounting like {@link #sendUnlimitedAsync}: for
+     * one-off metadata lookups (e.g. /api/show) that must neither wait behind generations in the limiter's queue nor
+     * be rejected by it.
+     */
+    static <R> R exchangeUnlimited(String model, String path, byte[] json, BodyReader<R> reader) throws IOException, InterruptedException {
+        HttpRequest request = unlimitedRequest(ENDPOINTS.choose(model), path, json);
+        HttpResponse<InputStream> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            return reader.read(response.statusCode(), body);
+        }
+    }
+
+    private static HttpRequest unlimitedRequest(OllamaEndpoints.Endpoint endpoint, String path, byte[] json) {
+        return HttpRequest.newBuilder()
+                .uri(endpoint.uri(path))
+                .timeout(Duration.ofSeconds(OllamaModelResolver.getOllamaTimeoutSeconds()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+                .build();
+    }
+
+    /**
+     * Sends {@code permit}'s request when its body is consumed incrementally (e.g. {@code BodyHandlers.ofLines()});
+     * the caller holds the permit (from {@link #acquire}) until it has finished reading and reports the status to it.
+     */
+    static <T> HttpResponse<T> sendStreaming(Permit permit, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        return CLIENT.send(permit.request(), handler);
+    }
+
+    /**
+     * Picks a server for {@code model}, then takes a slot of the model's adaptive limit on that server (may queue
+     * or reject, see {@link AdaptiveLimiter}) and one for the server's host, waiting at most the request timeout
+     * for the latter. The permit carries the JSON POST of {@code json} to {@code path} on that server.
+     */
+    static Permit acquire(String model, String path, byte[] json) throws IOException, InterruptedException {
+        return acquire(model, null, path, json);
+    }
+
+    /** {@link #acquire} on {@code endpoint}, or on the server the pool picks when null. */
+    private static Permit acquire(String model, OllamaEndpoints.Endpoint pinned, String path, byte[] json)
+            throws IOException, InterruptedException {
+        OllamaEndpoints.Endpoint endpoint = pinned != null ? pinned : ENDPOINTS.choose(model);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(endpoint.uri(path))
+                .timeout(Duration.ofSeconds(OllamaModelResolver.getOllamaTimeoutSeconds()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+                .build();
+        AdaptiveLimiter modelLimit = ADAPTIVE_LIMIT && model != null
+                ? MODEL_LIMITS.computeIfAbsent(model + "@" + endpoint.baseUrl,
+                        m -> new AdaptiveLimiter(m, LIMIT_INITIAL, LIMIT_MIN, LIMIT_MAX, LIMIT_TOLERANCE, LIMIT_QUEUE, LIMIT_QUEUE_TIMEOUT_NANOS))
+                : null;
+        endpoint.begin();
+        boolean acquired = false;
+        try {
+            if (modelLimit != null) {
+                modelLimit.acquire();
+            }
+            URI uri = request.uri();
+            Semaphore hostLimit = HOST_LIMITS.computeIfAbsent(uri.getHost() + ":" + uri.getPort(), h -> new Semaphore(MAX_PER_HOST, true));
+            long waitMillis = request.timeout().orElseThrow().toMillis();
+            try {
+                acquired = hostLimit.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+            } finally {
+                if (!acquired && modelLimit != null) {
+                    modelLimit.release(0, false);
+                }
+            }
+            if (!acquired) {
+                throw new HttpTimeoutException("no free connection slot for " + uri.getHost() + ":" + uri.getPort()
+                        + " within " + waitMillis + " ms (OLLAMA_MAX_CONCURRENT_PER_HOST=" + MAX_PER_HOST + ")");
+            }
+            return new Permit(model, endpoint, request, modelLimit, hostLimit);
+        } finally {
+            if (!acquired) {
+                // Rejected locally: says nothing about the server's health.
+                endpoint.abandon();
+            }
+        }
+    }
+
+    /** The server the pool would pick for {@code model} now, e.g. to queue a call per model and server. */
+    static OllamaEndpoints.Endpoint route(String model) {
+        return ENDPOINTS.choose(model);
+    }
+
+    /** Current adaptive concurrency limit of {@code model} on each server that has one, e.g. {@code {http://a:11434=6}}. */
+    static Map<String, Integer> modelLimits(String model) {
+        Map<String, Integer> out = new TreeMap<>();
+        for (OllamaEndpoints.Endpoint e : ENDPOINTS.all()) {
+            AdaptiveLimiter limiter = model != null ? MODEL_LIMITS.get(model + "@" + e.baseUrl) : null;
+            if (limiter != null) out.put(e.baseUrl, limiter.limit());
+        }
+        return out;
+    }
+
+    /** Servers of the pool with their state, for diagnostics. */
+    static List<String> endpoints() {
+        return ENDPOINTS.all().stream().map(Object::toString).toList();
+    }
+
+    /**
+     * Server, model and host slots of one request. {@link #complete} reports the HTTP status; a permit closed
+     * without one (timeout, connection error) counts as a failure of the server and as dropped for the adaptive
+     * limit, as do 5xx statuses; 429 only counts as dropped.
+     * <p>
+     * The adaptive limit's latency sample is the request's duration, or for a chat/generate reply (see
+     * {@link #complete(int, OllamaChat.Reply)}) the time per generated token, so long and short answers compare.
+     * Closing more than once is harmless.
+     */
+    static final class Permit implements AutoCloseable {
+        private final String model;
+        private final OllamaEndpoints.Endpoint endpoint;
+        private final HttpRequest request;
+        private final AdaptiveLimiter modelLimit;
+        private final Semaphore hostLimit;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile int status;
+        private volatile boolean cancelled;
+        private volatile boolean perToken;
+        private volatile OllamaChat.Reply reply;
+
+        private Permit(String model, OllamaEndpoints.Endpoint endpoint, HttpRequest request, AdaptiveLimiter modelLimit, Semaphore hostLimit) {
+            this.model = model;
+            this.endpoint = endpoint;
+            this.request = request;
+            this.modelLimit = modelLimit;
+            this.hostLimit = hostLimit;
+        }
+
+        HttpRequest request() {
+            return request;
+        }
+
+        void complete(int statusCode) {
+            status = statusCode;
+        }
+
+        /**
+         * Like {@link #complete(int)} for a chat/generate response: the latency sample becomes the time spent
+         * queueing and decoding per generated token, i.e. the duration minus Ollama's load_duration and
+         * prompt_eval_duration, divided by eval_count. A response without generated tokens (an error, a warm-up,
+         * a non-generation call) gives no sample.
+         */
+        void complete(int statusCode, OllamaChat.Reply reply) {
+            this.reply = reply;
+            perToken = true;
+            status = statusCode;
+        }
+
+        private long latencySample(long nanos) {
+            if (!perToken) {
+                return nanos;
+            }
+            OllamaChat.Reply r = reply;
+            if (r == null || r.evalCount() <= 0) {
+                return 0;
+            }
+            return Math.max(1, nanos - r.loadDurationNanos() - r.promptEvalNanos()) / r.evalCount();
+        }
+
+        /** The caller gave up on the request; closing then frees the slots without judging the server or the latency. */
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                hostLimit.release();
+                if (cancelled && status == 0) {
+                    endpoint.abandon();
+                    if (modelLimit != null) modelLimit.release(0, false);
+                    return;
+                }
+                boolean failed = status == 0 || status >= 500;
+                endpoint.end(model, failed, status == 404);
+                if (modelLimit != null) {
+                    modelLimit.release(latencySample(System.nanoTime() - startNanos), failed || status == 429);
+                }
+            }
+        }
+    }
+}
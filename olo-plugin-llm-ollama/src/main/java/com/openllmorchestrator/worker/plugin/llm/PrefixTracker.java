@@ -0,0 +1,59 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-prefix record of whether Ollama served a prompt's stable prefix (instruction preamble, retrieved context,
+ * earlier turns) from its KV cache. Ollama keeps the KV cache of a loaded model and re-evaluates only the tokens
+ * after the longest prefix a new prompt shares with what is cached, reporting those as prompt_eval_count. A
+ * request counts as a reuse when fewer than half of its prefix's estimated tokens were evaluated.
+ * <p>
+ * Bounded to {@code maxPrefixes} (least recently seen dropped); all methods are synchronized.
+ */
+final class PrefixTracker {
+
+    /** Outcome for one request: whether its prefix was reused, and that prefix's reuse ratio so far. */
+    record Observation(boolean reused, double reuseRatio) {
+    }
+
+    private static final class Stats {
+        long requests;
+        long reused;
+    }
+
+    private final Map<ContentKey, Stats> prefixes;
+
+    PrefixTracker(int maxPrefixes) {
+        this.prefixes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ContentKey, Stats> eldest) {
+                return size() > maxPrefixes;
+            }
+        };
+    }
+
+    /** Records a completed request of {@code model} whose prompt started with {@code prefix}. */
+    synchronized Observation record(String model, String prefix, OllamaChat.Reply reply) {
+        boolean reused = reply.promptEvalCount() > 0 && reply.promptEvalCount() * 2 < ContextPacker.estimateTokens(prefix);
+        Stats stats = prefixes.computeIfAbsent(ContentKey.of(model, prefix), k -> new Stats());
+        stats.requests++;
+        if (reused) stats.reused++;
+        return new Observation(reused, (double) stats.reused / stats.requests);
+    }
+}
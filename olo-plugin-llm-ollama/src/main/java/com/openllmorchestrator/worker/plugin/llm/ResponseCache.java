@@ -0,0 +1,179 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.llm;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory cache of model answers so a question asked again does not trigger another generation.
+ * Two tiers:
+ * <ul>
+ *   <li>exact: SHA-256 of (model, normalized prompt, retrieved chunk ids) — case, Unicode form and
+ *       whitespace runs are normalized away;</li>
+ *   <li>semantic: among entries for the same model and the same chunk ids, the answer whose question
+ *       embedding has cosine similarity of at least {@code similarity} with the new one.</li>
+ * </ul>
+ * Entries expire {@code ttlNanos} after they are stored and the least recently used entry is evicted past
+ * {@code maxEntries}. The semantic tier is a linear scan over the live entries, which at the default
+ * bound is well under a millisecond; it is skipped when {@code similarity} is 0 or no embedding is given.
+ * <p>
+ * Each entry keeps how long its generation took, so a hit reports the latency it saved.
+ */
+final class ResponseCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    enum Tier { EXACT, SEMANTIC }
+
+    /** A cached answer and how it was found. */
+    record Hit(String answer, Tier tier, long savedNanos) {
+    }
+
+    private record Entry(String answer, long generationNanos, long expiresAt, ContentKey scope, float[] unitVector) {
+    }
+
+    private final long ttlNanos;
+    private final double similarity;
+    private final Map<ContentKey, Entry> entries;
+    private long lookups;
+    private long hits;
+    private long savedNanos;
+
+    ResponseCache(int maxEntries, long ttlNanos, double similarity) {
+        this.ttlNanos = ttlNanos;
+        this.similarity = similarity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ContentKey, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /** Case-folded NFKC text with whitespace runs collapsed to one space and ends trimmed. */
+    static String normalize(String text) {
+        String n = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return WHITESPACE.matcher(n).replaceAll(" ").trim();
+    }
+
+    /** Identity of a retrieved chunk: "path#index" when the store gave both, else its text. */
+    static String chunkId(Map<String, Object> chunk) {
+        Object path = chunk.get("path");
+        Object index = chunk.get("index");
+        if (path != null && index != null) {
+            return path + "#" + index;
+        }
+        if (chunk.get("id") != null) {
+            return chunk.get("id").toString();
+        }
+        Object text = chunk.get("text") != null ? chunk.get("text") : chunk.get("content");
+        return text != null ? text.toString() : "";
+    }
+
+    /** Key of the model and chunk ids alone; semantic matches must share it. */
+    static ContentKey scope(String model, List<Map<String, Object>> chunks) {
+        StringBuilder sb = new StringBuilder();
+        if (chunks != null) {
+            for (Map<String, Object> chunk : chunks) {
+                if (chunk != null) sb.append(chunkId(chunk)).append('\u0000');
+            }
+        }
+        return ContentKey.of(model, sb.toString());
+    }
+
+    /** Exact key: the scope's digest plus the normalized prompt. */
+    static ContentKey key(ContentKey scope, String prompt) {
+        return ContentKey.of(scope, normalize(prompt));
+    }
+
+    /**
+     * Cached answer for {@code key}, else (when {@code embedding} is given) the closest answer in
+     * {@code scope} above the similarity threshold, else null. Counts toward {@link #hitRatio}.
+     */
+    synchronized Hit get(ContentKey key, ContentKey scope, float[] embedding) {
+        long now = System.nanoTime();
+        lookups++;
+        Entry e = entries.get(key);
+        if (e != null && now - e.expiresAt() >= 0) {
+            entries.remove(key);
+            e = null;
+        }
+        Tier tier = Tier.EXACT;
+        if (e == null && similarity > 0 && embedding != null) {
+            e = nearest(scope, unit(embedding), now);
+            tier = Tier.SEMANTIC;
+        }
+        if (e == null) {
+            return null;
+        }
+        hits++;
+        savedNanos += e.generationNanos();
+        return new Hit(e.answer(), tier, e.generationNanos());
+    }
+
+    /** Stores an answer that took {@code generationNanos} to produce; {@code embedding} may be null. */
+    synchronized void put(ContentKey key, ContentKey scope, float[] embedding, String answer, long generationNanos) {
+        entries.put(key, new Entry(answer, generationNanos, System.nanoTime() + ttlNanos, scope,
+                embedding != null ? unit(embedding) : null));
+    }
+
+    synchronized double hitRatio() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    synchronized long savedMillisTotal() {
+        return savedNanos / 1_000_000;
+    }
+
+    private Entry nearest(ContentKey scope, float[] query, long now) {
+        Entry best = null;
+        double bestScore = similarity;
+        for (var it = entries.values().iterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            if (now - e.expiresAt() >= 0) {
+                it.remove();
+                continue;
+            }
+            if (e.unitVector() == null || e.unitVector().length != query.length || !e.scope().equals(scope)) {
+                continue;
+            }
+            double dot = 0;
+            for (int i = 0; i < query.length; i++) dot += e.unitVector()[i] * query[i];
+            if (dot >= bestScore) {
+                best = e;
+                bestScore = dot;
+            }
+        }
+        return best;
+    }
+
+    private static float[] unit(float[] v) {
+        double norm = 0;
+        for (float f : v) norm += f * f;
+        float[] out = new float[v.length];
+        if (norm == 0) {
+            return out;
+        }
+        float inv = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < v.length; i++) out[i] = v[i] * inv;
+        return out;
+    }
+}
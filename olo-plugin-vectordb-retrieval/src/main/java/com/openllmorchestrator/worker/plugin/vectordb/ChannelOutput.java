@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/** Buffered little-endian writer over a FileChannel that tracks the absolute file position. */
+final class ChannelOutput {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+
+    ChannelOutput(FileChannel channel, long startPosition) throws IOException {
+        this.channel = channel;
+        this.position = startPosition;
+        channel.position(startPosition);
+    }
+
+    long position() {
+        return position;
+    }
+
+    void putShort(short v) throws IOException {
+        ensure(Short.BYTES);
+        buffer.putShort(v);
+        position += Short.BYTES;
+    }
+
+    void putInt(int v) throws IOException {
+        ensure(Integer.BYTES);
+        buffer.putInt(v);
+        position += Integer.BYTES;
+    }
+
+    void putLong(long v) throws IOException {
+        ensure(Long.BYTES);
+        buffer.putLong(v);
+        position += Long.BYTES;
+    }
+
+    void putFloat(float v) throws IOException {
+        ensure(Float.BYTES);
+        buffer.putFloat(v);
+        position += Float.BYTES;
+    }
+
+    void putByte(byte v) throws IOException {
+        ensure(1);
+        buffer.put(v);
+        position++;
+    }
+
+    void putBytes(byte[] bytes) throws IOException {
+        int off = 0;
+        while (off < bytes.length) {
+            ensure(1);
+            int n = Math.min(buffer.remaining(), bytes.length - off);
+            buffer.put(bytes, off, n);
+            off += n;
+        }
+        position += bytes.length;
+    }
+
+    /** Pads with zero bytes up to the next multiple of {@code alignment}. */
+    void align(int alignment) throws IOException {
+        while (position % alignment != 0) {
+            ensure(1);
+            buffer.put((byte) 0);
+            position++;
+        }
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
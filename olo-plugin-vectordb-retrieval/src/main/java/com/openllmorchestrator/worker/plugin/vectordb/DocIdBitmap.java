@@ -0,0 +1,284 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed set of segment ordinals in the style of Roaring bitmaps: ordinals are split by their high
+ * 16 bits into containers, each either a sorted {@code char[]} (up to {@value #ARRAY_MAX} values) or a
+ * 1024-word bitset. Sparse filters stay small and dense ones cost at most 8 KiB per 65536 ordinals, and
+ * {@link #contains} is a binary search over the container keys plus one array or bit probe.
+ * <p>
+ * Instances are immutable once built; {@link Builder} takes ordinals in increasing order.
+ */
+final class DocIdBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    static final DocIdBitmap EMPTY = new DocIdBitmap(new char[0], new Object[0], 0);
+
+    /** High 16 bits of the ordinals in each container, ascending. */
+    private final char[] keys;
+    /** Per key: {@code char[]} of sorted low bits (exact length) or {@code long[1024]}. */
+    private final Object[] containers;
+    private final int cardinality;
+
+    private DocIdBitmap(char[] keys, Object[] containers, int cardinality) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinality = cardinality;
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean contains(int ord) {
+        int i = Arrays.binarySearch(keys, (char) (ord >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) ord;
+        Object c = containers[i];
+        if (c instanceof long[] bits) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) c, low) >= 0;
+    }
+
+    /** Ordinals in increasing order. */
+    int[] toArray() {
+        int[] out = new int[cardinality];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int high = keys[i] << 16;
+            Object c = containers[i];
+            if (c instanceof long[] bits) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        out[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                for (char low : (char[]) c) {
+                    out[n++] = high | low;
+                }
+            }
+        }
+        return out;
+    }
+
+    DocIdBitmap and(DocIdBitmap other) {
+        Builder b = new Builder();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                int high = keys[i] << 16;
+                Object a = containers[i];
+                Object c = other.containers[j];
+                if (a instanceof long[] x && c instanceof long[] y) {
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        long word = x[w] & y[w];
+                        while (word != 0) {
+                            b.add(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                            word &= word - 1;
+                        }
+                    }
+                } else {
+                    // At least one side is an array: probe its values in the other container.
+                    boolean aIsArray = a instanceof char[];
+                    char[] small = (char[]) (aIsArray ? a : c);
+                    DocIdBitmap probe = aIsArray ? other : this;
+                    for (char low : small) {
+                        if (probe.contains(high | low)) b.add(high | low);
+                    }
+                }
+                i++;
+                j++;
+            }
+        }
+        return b.build();
+    }
+
+    DocIdBitmap or(DocIdBitmap other) {
+        if (cardinality == 0) return other;
+        if (other.cardinality == 0) return this;
+        Builder b = new Builder();
+        int[] x = toArray();
+        int[] y = other.toArray();
+        int i = 0;
+        int j = 0;
+        while (i < x.length || j < y.length) {
+            if (j == y.length || (i < x.length && x[i] < y[j])) {
+                b.add(x[i++]);
+            } else if (i == x.length || y[j] < x[i]) {
+                b.add(y[j++]);
+            } else {
+                b.add(x[i++]);
+                j++;
+            }
+        }
+        return b.build();
+    }
+
+    /** Ordinals in {@code [0, size)} that are not in this bitmap. */
+    DocIdBitmap complement(int size) {
+        Builder b = new Builder();
+        int[] present = toArray();
+        int j = 0;
+        for (int ord = 0; ord < size; ord++) {
+            if (j < present.length && present[j] == ord) {
+                j++;
+            } else {
+                b.add(ord);
+            }
+        }
+        return b.build();
+    }
+
+    /** Bitmap of the first {@code count} entries of {@code ords} (any order, duplicates allowed); sorts them in place. */
+    static DocIdBitmap of(int[] ords, int count) {
+        Arrays.sort(ords, 0, count);
+        Builder b = new Builder();
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || ords[i] != ords[i - 1]) b.add(ords[i]);
+        }
+        return b.build();
+    }
+
+    /** Bytes written by {@link #writeTo}. */
+    int serializedSize() {
+        int size = 8 + keys.length * 8;
+        for (Object c : containers) {
+            size += c instanceof long[] ? BITMAP_WORDS * Long.BYTES : ((char[]) c).length * Character.BYTES;
+        }
+        return size;
+    }
+
+    /** Serialized layout: containerCount int, cardinality int, per container (key, size) int pairs, then container data. */
+    void writeTo(ChannelOutput out) throws IOException {
+        out.putInt(keys.length);
+        out.putInt(cardinality);
+        for (int i = 0; i < keys.length; i++) {
+            out.putInt(keys[i]);
+            out.putInt(containers[i] instanceof char[] values ? values.length : -1);
+        }
+        for (Object c : containers) {
+            if (c instanceof long[] bits) {
+                for (long word : bits) out.putLong(word);
+            } else {
+                for (char v : (char[]) c) out.putShort((short) v);
+            }
+        }
+    }
+
+    /** Reads a bitmap written by {@link #writeTo} starting at absolute {@code offset} of {@code in}. */
+    static DocIdBitmap read(ByteBuffer in, int offset) {
+        int count = in.getInt(offset);
+        int cardinality = in.getInt(offset + 4);
+        char[] keys = new char[count];
+        int[] sizes = new int[count];
+        int pos = offset + 8;
+        for (int i = 0; i < count; i++) {
+            keys[i] = (char) in.getInt(pos);
+            sizes[i] = in.getInt(pos + 4);
+            pos += 8;
+        }
+        Object[] containers = new Object[count];
+        for (int i = 0; i < count; i++) {
+            if (sizes[i] < 0) {
+                long[] bits = new long[BITMAP_WORDS];
+                for (int w = 0; w < BITMAP_WORDS; w++, pos += 8) bits[w] = in.getLong(pos);
+                containers[i] = bits;
+            } else {
+                char[] values = new char[sizes[i]];
+                for (int v = 0; v < values.length; v++, pos += 2) values[v] = (char) in.getShort(pos);
+                containers[i] = values;
+            }
+        }
+        return new DocIdBitmap(keys, containers, cardinality);
+    }
+
+    /** Accumulates ordinals in strictly increasing order. */
+    static final class Builder {
+        private char[] keys = new char[4];
+        private Object[] containers = new Object[4];
+        private int count;
+        private char[] current = new char[16];
+        private int currentSize;
+        private int currentKey = -1;
+        private int cardinality;
+        private int last = -1;
+
+        void add(int ord) {
+            if (ord <= last) {
+                throw new IllegalArgumentException("ordinals must be added in increasing order");
+            }
+            last = ord;
+            int key = ord >>> 16;
+            if (key != currentKey) {
+                finishContainer();
+                currentKey = key;
+            }
+            if (currentSize == current.length) {
+                current = Arrays.copyOf(current, Math.min(65536, currentSize * 2));
+            }
+            current[currentSize++] = (char) ord;
+            cardinality++;
+        }
+
+        DocIdBitmap build() {
+            finishContainer();
+            return new DocIdBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(containers, count), cardinality);
+        }
+
+        private void finishContainer() {
+            if (currentSize == 0) {
+                return;
+            }
+            Object container;
+            if (currentSize > ARRAY_MAX) {
+                long[] bits = new long[BITMAP_WORDS];
+                for (int i = 0; i < currentSize; i++) {
+                    char low = current[i];
+                    bits[low >>> 6] |= 1L << low;
+                }
+                container = bits;
+            } else {
+                container = Arrays.copyOf(current, currentSize);
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                containers = Arrays.copyOf(containers, count * 2);
+            }
+            keys[count] = (char) currentKey;
+            containers[count] = container;
+            count++;
+            currentSize = 0;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Per-segment metadata postings for filtered retrieval: for every indexed (field, value) pair, the
+ * {@link DocIdBitmap} of chunks carrying it. Always indexed: {@value #PATH} (with '/' separators) and
+ * {@value #EXTENSION} (lower case, no dot); plus the configured metadata fields (e.g. "tenant").
+ * <p>
+ * Keys are {@code field + '\0' + value}, sorted, so a path prefix is one contiguous key range.
+ * Section layout (FILTER): fieldCount int and the indexed metadata field names, then keyCount int and per key
+ * the key, bitmap length int and bitmap (see {@link DocIdBitmap#writeTo}); strings are length-prefixed UTF-8.
+ * Keys are read when the segment is first filtered; bitmaps are decoded per key on demand.
+ */
+final class FilterIndex {
+
+    static final String PATH = "path";
+    static final String EXTENSION = "extension";
+
+    /** Indexed metadata fields; null when every field is indexed. */
+    private final Set<String> fields;
+    private final String[] keys;
+    private final DocIdBitmap[] bitmaps;
+    private final int[] bitmapOffsets;
+    private final ByteBuffer data;
+
+    private FilterIndex(Set<String> fields, String[] keys, DocIdBitmap[] bitmaps, int[] bitmapOffsets, ByteBuffer data) {
+        this.fields = fields;
+        this.keys = keys;
+        this.bitmaps = bitmaps;
+        this.bitmapOffsets = bitmapOffsets;
+        this.data = data;
+    }
+
+    /**
+     * Indexes path, extension and the given metadata fields of {@code chunks}.
+     *
+     * @param fields metadata keys to index; null indexes every metadata key
+     */
+    static FilterIndex build(List<StoredChunk> chunks, Set<String> fields) {
+        TreeMap<String, DocIdBitmap.Builder> postings = new TreeMap<>();
+        for (int ord = 0; ord < chunks.size(); ord++) {
+            StoredChunk chunk = chunks.get(ord);
+            if (chunk.path() != null) {
+                String path = normalizePath(chunk.path());
+                postings.computeIfAbsent(key(PATH, path), k -> new DocIdBitmap.Builder()).add(ord);
+                String ext = extension(path);
+                if (ext != null) {
+                    postings.computeIfAbsent(key(EXTENSION, ext), k -> new DocIdBitmap.Builder()).add(ord);
+                }
+            }
+            for (Map.Entry<String, String> e : chunk.metadata().entrySet()) {
+                String field = e.getKey();
+                if ((fields == null || fields.contains(field)) && !PATH.equals(field) && !EXTENSION.equals(field)) {
+                    postings.computeIfAbsent(key(e.getKey(), e.getValue()), k -> new DocIdBitmap.Builder()).add(ord);
+                }
+            }
+        }
+        String[] keys = postings.keySet().toArray(new String[0]);
+        DocIdBitmap[] bitmaps = new DocIdBitmap[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            bitmaps[i] = postings.get(keys[i]).build();
+        }
+        return new FilterIndex(fields != null ? Set.copyOf(fields) : null, keys, bitmaps, null, null);
+    }
+
+    static FilterIndex read(ByteBuffer section) {
+        ByteBuffer in = section.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int fieldCount = in.getInt();
+        Set<String> fields = new HashSet<>();
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add(readString(in));
+        }
+        int count = in.getInt();
+        String[] keys = new String[count];
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = readString(in);
+            int length = in.getInt();
+            offsets[i] = in.position();
+            in.position(in.position() + length);
+        }
+        return new FilterIndex(fields, keys, new DocIdBitmap[count], offsets, section);
+    }
+
+    /** Writes the FILTER section; only for indexes built with an explicit field set. */
+    void writeTo(ChannelOutput out) throws IOException {
+        out.putInt(fields.size());
+        for (String field : fields) {
+            writeString(out, field);
+        }
+        out.putInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            writeString(out, keys[i]);
+            out.putInt(bitmaps[i].serializedSize());
+            bitmaps[i].writeTo(out);
+        }
+    }
+
+    /** Whether {@code field} can be filtered on in this segment (path and extension always can). */
+    boolean indexes(String field) {
+        return fields == null || PATH.equals(field) || EXTENSION.equals(field) || fields.contains(field);
+    }
+
+    /** Chunks whose {@code field} equals {@code value}. */
+    DocIdBitmap exact(String field, String value) {
+        int i = Arrays.binarySearch(keys, key(field, normalize(field, value)));
+        return i >= 0 ? bitmap(i) : DocIdBitmap.EMPTY;
+    }
+
+    /**
+     * Chunks whose {@code field} starts with {@code prefix}. Matching keys form one range; their ordinals are
+     * gathered and sorted once rather than OR'ed pairwise, since a directory prefix can cover thousands of paths.
+     */
+    DocIdBitmap prefix(String field, String prefix) {
+        String from = key(field, normalize(field, prefix));
+        int i = Arrays.binarySearch(keys, from);
+        if (i < 0) i = -i - 1;
+        int end = i;
+        while (end < keys.length && keys[end].startsWith(from)) end++;
+        if (end - i == 1) {
+            return bitmap(i);
+        }
+        int[] ords = new int[0];
+        int count = 0;
+        for (; i < end; i++) {
+            int[] values = bitmap(i).toArray();
+            if (count + values.length > ords.length) {
+                ords = Arrays.copyOf(ords, Math.max(count + values.length, ords.length * 2));
+            }
+            System.arraycopy(values, 0, ords, count, values.length);
+            count += values.length;
+        }
+        return DocIdBitmap.of(ords, count);
+    }
+
+    private DocIdBitmap bitmap(int i) {
+        DocIdBitmap b = bitmaps[i];
+        if (b == null) {
+            // Benign race: concurrent readers may both decode the same immutable bitmap.
+            b = DocIdBitmap.read(data, bitmapOffsets[i]);
+            bitmaps[i] = b;
+        }
+        return b;
+    }
+
+    private static void writeString(ChannelOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.putBytes(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String key(String field, String value) {
+        return field + '\0' + value;
+    }
+
+    private static String normalize(String field, String value) {
+        if (PATH.equals(field)) return normalizePath(value);
+        if (EXTENSION.equals(field)) {
+            String ext = value.trim().toLowerCase(Locale.ROOT);
+            return ext.startsWith(".") ? ext.substring(1) : ext;
+        }
+        return value;
+    }
+
+    static String normalizePath(String path) {
+        return path.replace('\\', '/');
+    }
+
+    /** Lower-cased extension of the last path element without the dot, or null. */
+    static String extension(String path) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash + 1 || dot == path.length() - 1) {
+            return null;
+        }
+        return path.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
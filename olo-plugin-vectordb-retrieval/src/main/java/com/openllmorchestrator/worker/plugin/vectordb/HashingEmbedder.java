@@ -0,0 +1,78 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+/**
+ * Local fallback embedder: signed feature hashing of lower-cased word unigrams and bigrams into a
+ * fixed number of dimensions, L2-normalized. Used when chunks / questions arrive without an
+ * upstream "embedding" so the store still works with no external model.
+ */
+final class HashingEmbedder {
+
+    private final int dimension;
+
+    HashingEmbedder(int dimension) {
+        if (dimension <= 0) throw new IllegalArgumentException("dimension must be > 0");
+        this.dimension = dimension;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    float[] embed(String text) {
+        float[] v = new float[dimension];
+        if (text == null || text.isEmpty()) {
+            return v;
+        }
+        int prev = 0;
+        boolean hasPrev = false;
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            while (i < n && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i >= n) break;
+            int h = 0x811C9DC5;
+            while (i < n && Character.isLetterOrDigit(text.charAt(i))) {
+                h = (h ^ Character.toLowerCase(text.charAt(i))) * 0x01000193;
+                i++;
+            }
+            accumulate(v, mix(h));
+            if (hasPrev) {
+                accumulate(v, mix(prev * 31 + h));
+            }
+            prev = h;
+            hasPrev = true;
+        }
+        VectorSimilarity.normalize(v);
+        return v;
+    }
+
+    private void accumulate(float[] v, int hash) {
+        int bucket = Math.floorMod(hash, dimension);
+        v[bucket] += (hash & 0x80000000) != 0 ? -1f : 1f;
+    }
+
+    /** murmur3 fmix32 finalizer: spreads FNV bits so bucket and sign are independent. */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,550 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HNSW (Hierarchical Navigable Small World) graph over a {@link VectorValues} source.
+ * <p>
+ * Two modes: a graph being built holds its neighbor lists on the heap (int[] with the count in
+ * slot 0); a graph loaded from a segment reads level 0 straight from the mapped file and keeps only
+ * the sparse upper levels on the heap. Level 0 allows {@code 2 * M} links, upper levels {@code M}.
+ * <p>
+ * {@link #add(int)} is single-writer; {@link #addAll(int)} links a batch from several threads, guarding each
+ * neighbor list with its own monitor. Searches may run concurrently with each other, not with writers.
+ */
+final class HnswIndex {
+
+    private static final int MAX_LEVEL = 16;
+
+    private static final ThreadLocal<VisitedSet> VISITED = ThreadLocal.withInitial(VisitedSet::new);
+    private static final ThreadLocal<int[][]> SCRATCH = ThreadLocal.withInitial(() -> new int[1][0]);
+
+    private final VectorValues vectors;
+    private final VectorSimilarity similarity;
+    private final int m;
+    private final int maxConn0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42L);
+    /** Held while reading the entry point, and for the whole insert of a node that raises the top level. */
+    private final ReentrantLock entryLock = new ReentrantLock();
+
+    /** Level-0 lists when building; null when level 0 is read from {@link #mappedLevel0}. */
+    private int[][] level0;
+    private final IntBuffer mappedLevel0;
+    private int[][][] upper;
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /** Creates an empty graph for building over {@code vectors}. */
+    HnswIndex(VectorValues vectors, VectorSimilarity similarity, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.similarity = similarity;
+        this.m = Math.max(2, m);
+        this.maxConn0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.level0 = new int[64][];
+        this.upper = new int[64][][];
+        this.mappedLevel0 = null;
+    }
+
+    private HnswIndex(VectorValues vectors, VectorSimilarity similarity, int m, int size, int entryPoint, int maxLevel,
+                      IntBuffer mappedLevel0, int[][][] upper) {
+        this.vectors = vectors;
+        this.similarity = similarity;
+        this.m = m;
+        this.maxConn0 = m * 2;
+        this.efConstruction = m;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.mappedLevel0 = mappedLevel0;
+        this.upper = upper;
+        this.size = size;
+        this.entryPoint = entryPoint;
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * Opens a read-only graph over a mapped segment.
+     *
+     * @param level0 GRAPH_L0 section: {@code size * (2M + 1)} little-endian ints
+     * @param upperSection GRAPH_UPPER section: per node with level &gt; 0, {@code node, level, level * (M + 1) ints}
+     */
+    static HnswIndex load(VectorValues vectors, VectorSimilarity similarity, int m, int entryPoint, int maxLevel,
+                          ByteBuffer level0, ByteBuffer upperSection) {
+        int size = vectors.size();
+        int[][][] upper = new int[size][][];
+        ByteBuffer in = upperSection.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        while (in.remaining() >= 2 * Integer.BYTES) {
+            int node = in.getInt();
+            int level = in.getInt();
+            int[][] levels = new int[level][m + 1];
+            for (int l = 0; l < level; l++) {
+                for (int i = 0; i <= m; i++) {
+                    levels[l][i] = in.getInt();
+                }
+            }
+            upper[node] = levels;
+        }
+        IntBuffer l0 = level0.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        return new HnswIndex(vectors, similarity, m, size, entryPoint, maxLevel, l0, upper);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int m() {
+        return m;
+    }
+
+    int entryPoint() {
+        return entryPoint;
+    }
+
+    int maxLevel() {
+        return maxLevel;
+    }
+
+    VectorSimilarity similarity() {
+        return similarity;
+    }
+
+    /** Links vector {@code node} (must be the next ordinal in the backing vectors) into the graph. */
+    void add(int node) {
+        checkWritable();
+        if (node != size || node >= vectors.size()) {
+            throw new IllegalArgumentException("nodes must be added in ordinal order");
+        }
+        ensureCapacity(node + 1);
+        allocate(node);
+        size++;
+        insert(node);
+    }
+
+    /**
+     * Links every vector not yet in the graph using up to {@code threads} threads. Levels are drawn up front
+     * in ordinal order and workers claim nodes in that order, so the graph has the same shape as a sequential
+     * build though not the same links.
+     */
+    void addAll(int threads) {
+        checkWritable();
+        int from = size;
+        int to = vectors.size();
+        ensureCapacity(to);
+        for (int node = from; node < to; node++) {
+            allocate(node);
+        }
+        size = to;
+        if (from < to && entryPoint < 0) {
+            insert(from++);
+        }
+        int workers = Math.min(Math.max(1, threads), to - from);
+        if (workers <= 1) {
+            for (int node = from; node < to; node++) {
+                insert(node);
+            }
+            return;
+        }
+        AtomicInteger next = new AtomicInteger(from);
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int t = 0; t < workers; t++) {
+            tasks.add(() -> {
+                for (int node = next.getAndIncrement(); node < to; node = next.getAndIncrement()) {
+                    insert(node);
+                }
+                return null;
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building HNSW graph", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void checkWritable() {
+        if (level0 == null) {
+            throw new IllegalStateException("graph is read-only");
+        }
+    }
+
+    /** Draws the level of {@code node} and allocates its (empty) neighbor lists. */
+    private void allocate(int node) {
+        int level = randomLevel();
+        level0[node] = new int[maxConn0 + 1];
+        if (level > 0) {
+            upper[node] = new int[level][m + 1];
+        }
+    }
+
+    private void insert(int node) {
+        int level = upper[node] == null ? 0 : upper[node].length;
+        entryLock.lock();
+        int ep = entryPoint;
+        int top = maxLevel;
+        boolean raisesTop = level > top;
+        if (!raisesTop) {
+            entryLock.unlock();
+        }
+        try {
+            if (ep < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+            float[] vector = new float[vectors.dimension()];
+            vectors.copyTo(node, vector);
+            QueryScorer scorer = ord -> vectors.score(similarity, vector, ord);
+            float epScore = scorer.score(ep);
+            for (int l = top; l > level; l--) {
+                ep = greedyClosest(scorer, ep, epScore, l);
+                epScore = scorer.score(ep);
+            }
+            VisitedSet visited = VISITED.get();
+            for (int l = Math.min(level, top); l >= 0; l--) {
+                NeighborQueue found = searchLayer(scorer, ep, epScore, efConstruction, l, visited, null, Integer.MAX_VALUE);
+                int count = found.size();
+                int[] cand = new int[count];
+                float[] candScores = new float[count];
+                for (int i = count - 1; i >= 0; i--) {
+                    candScores[i] = found.topScore();
+                    cand[i] = found.pop();
+                }
+                int[] links = links(node, l);
+                int[] selected;
+                synchronized (links) {
+                    selectNeighbors(cand, candScores, count, m, links);
+                    selected = Arrays.copyOfRange(links, 1, links[0] + 1);
+                }
+                int maxConn = l == 0 ? maxConn0 : m;
+                for (int neighbor : selected) {
+                    connect(neighbor, node, l, maxConn);
+                }
+                ep = cand[0];
+                epScore = candScores[0];
+            }
+            if (raisesTop) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+        } finally {
+            if (raisesTop) {
+                entryLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code topK} nearest ordinals as a min-queue (lowest score on top).
+     * {@code query} must already be prepared for the index similarity.
+     */
+    NeighborQueue search(float[] query, int topK, int efSearch) {
+        return search(ord -> vectors.score(similarity, query, ord), topK, efSearch);
+    }
+
+    /** Same as {@link #search(float[], int, int)} but scores through {@code scorer} (e.g. quantized codes). */
+    NeighborQueue search(QueryScorer scorer, int topK, int efSearch) {
+        return search(scorer, topK, efSearch, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Filtered search: the graph is traversed through every node, but only ordinals in {@code accept} enter
+     * the results, so a selective filter still yields {@code topK} hits instead of the few that survive a
+     * post-filter. Returns null once more than {@code visitLimit} level-0 nodes have been scored; the caller
+     * then scans the accepted ordinals exactly, which at that point is the cheaper plan.
+     *
+     * @param accept ordinals that may be returned, or null for all
+     */
+    NeighborQueue search(QueryScorer scorer, int topK, int efSearch, DocIdBitmap accept, int visitLimit) {
+        if (size == 0 || topK <= 0) {
+            return new NeighborQueue(1, false);
+        }
+        int ep = entryPoint;
+        float epScore = scorer.score(ep);
+        for (int l = maxLevel; l > 0; l--) {
+            ep = greedyClosest(scorer, ep, epScore, l);
+            epScore = scorer.score(ep);
+        }
+        int ef = Math.max(topK, efSearch);
+        NeighborQueue found = searchLayer(scorer, ep, epScore, ef, 0, VISITED.get(), accept, visitLimit);
+        if (found == null) {
+            return null;
+        }
+        while (found.size() > topK) {
+            found.pop();
+        }
+        return found;
+    }
+
+    /** Writes the GRAPH_L0 section ({@code size * (2M + 1)} ints). */
+    void writeLevel0(ChannelOutput out) throws IOException {
+        int[] scratch = scratch();
+        for (int node = 0; node < size; node++) {
+            int count = neighbors(node, 0, scratch);
+            out.putInt(count);
+            for (int i = 0; i < maxConn0; i++) {
+                out.putInt(i < count ? scratch[i] : 0);
+            }
+        }
+    }
+
+    /** Writes the GRAPH_UPPER section (nodes with level &gt; 0 only). */
+    void writeUpper(ChannelOutput out) throws IOException {
+        for (int node = 0; node < size; node++) {
+            int[][] levels = upper[node];
+            if (levels == null) continue;
+            out.putInt(node);
+            out.putInt(levels.length);
+            for (int[] links : levels) {
+                for (int i = 0; i <= m; i++) {
+                    out.putInt(links[i]);
+                }
+            }
+        }
+    }
+
+    /** Heap neighbor list (build mode only). */
+    private int[] links(int node, int level) {
+        return level == 0 ? level0[node] : upper[node][level - 1];
+    }
+
+    /** Copies the neighbors of {@code node} at {@code level} into {@code dst}; returns the count. */
+    private int neighbors(int node, int level, int[] dst) {
+        if (level == 0 && mappedLevel0 != null) {
+            int base = node * (maxConn0 + 1);
+            int count = mappedLevel0.get(base);
+            mappedLevel0.get(base + 1, dst, 0, count);
+            return count;
+        }
+        int[] links = level == 0 ? level0[node] : upper[node][level - 1];
+        if (level0 == null) {
+            int count = links[0];
+            System.arraycopy(links, 1, dst, 0, count);
+            return count;
+        }
+        synchronized (links) {
+            int count = links[0];
+            System.arraycopy(links, 1, dst, 0, count);
+            return count;
+        }
+    }
+
+    private int[] scratch() {
+        int[][] holder = SCRATCH.get();
+        if (holder[0].length < maxConn0 + 1) {
+            holder[0] = new int[maxConn0 + 1];
+        }
+        return holder[0];
+    }
+
+    private int greedyClosest(QueryScorer scorer, int ep, float epScore, int level) {
+        int[] scratch = scratch();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int count = neighbors(ep, level, scratch);
+            for (int i = 0; i < count; i++) {
+                int n = scratch[i];
+                float s = scorer.score(n);
+                if (s > epScore) {
+                    ep = n;
+                    epScore = s;
+                    changed = true;
+                }
+            }
+        }
+        return ep;
+    }
+
+    /**
+     * Best-first search of one layer. With a filter, rejected nodes are still expanded (they bridge to
+     * accepted ones) but never enter the results, and the frontier is not pruned until {@code ef} accepted
+     * nodes have been found. Returns null when more than {@code visitLimit} nodes were scored.
+     */
+    private NeighborQueue searchLayer(QueryScorer scorer, int ep, float epScore, int ef, int level, VisitedSet visited,
+                                      DocIdBitmap accept, int visitLimit) {
+        NeighborQueue candidates = new NeighborQueue(ef, true);
+        NeighborQueue results = new NeighborQueue(ef + 1, false);
+        int[] scratch = scratch();
+        visited.reset(size);
+        visited.add(ep);
+        int visitedCount = 1;
+        candidates.add(ep, epScore);
+        if (accept == null || accept.contains(ep)) {
+            results.add(ep, epScore);
+        }
+        while (!candidates.isEmpty()) {
+            if (results.size() >= ef && candidates.topScore() < results.topScore()) {
+                break;
+            }
+            int c = candidates.pop();
+            int count = neighbors(c, level, scratch);
+            for (int i = 0; i < count; i++) {
+                int n = scratch[i];
+                if (!visited.add(n)) {
+                    continue;
+                }
+                if (++visitedCount > visitLimit) {
+                    return null;
+                }
+                float s = scorer.score(n);
+                if (results.size() < ef || s > results.topScore()) {
+                    candidates.add(n, s);
+                    if (accept == null || accept.contains(n)) {
+                        results.insertWithOverflow(n, s, ef);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * HNSW neighbor-selection heuristic: keep a candidate only if it is closer to the base node than to
+     * any neighbor already kept, which spreads links across directions. Remaining slots are back-filled
+     * with pruned candidates so sparse regions stay connected.
+     * Candidates must be sorted best-first. Writes {@code [count, n1, n2, ...]} into {@code out}.
+     */
+    private void selectNeighbors(int[] cand, float[] candScores, int count, int max, int[] out) {
+        int selected = 0;
+        boolean[] kept = new boolean[count];
+        for (int i = 0; i < count && selected < max; i++) {
+            boolean diverse = true;
+            for (int j = 1; j <= selected; j++) {
+                if (vectors.score(similarity, cand[i], out[j]) > candScores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                out[++selected] = cand[i];
+                kept[i] = true;
+            }
+        }
+        for (int i = 0; i < count && selected < max; i++) {
+            if (!kept[i]) {
+                out[++selected] = cand[i];
+            }
+        }
+        out[0] = selected;
+    }
+
+    private void connect(int target, int newNode, int level, int maxConn) {
+        int[] links = links(target, level);
+        synchronized (links) {
+            connectLocked(links, target, newNode, maxConn);
+        }
+    }
+
+    private void connectLocked(int[] links, int target, int newNode, int maxConn) {
+        int count = links[0];
+        if (count < maxConn) {
+            links[count + 1] = newNode;
+            links[0] = count + 1;
+            return;
+        }
+        int total = count + 1;
+        int[] cand = new int[total];
+        float[] candScores = new float[total];
+        for (int i = 0; i < count; i++) {
+            cand[i] = links[i + 1];
+            candScores[i] = vectors.score(similarity, target, cand[i]);
+        }
+        cand[count] = newNode;
+        candScores[count] = vectors.score(similarity, target, newNode);
+        sortDescending(cand, candScores, total);
+        selectNeighbors(cand, candScores, total, maxConn, links);
+    }
+
+    private static void sortDescending(int[] nodes, float[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int n = nodes[i];
+            float s = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < s) {
+                nodes[j + 1] = nodes[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            nodes[j + 1] = n;
+            scores[j + 1] = s;
+        }
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(r) * levelMultiplier));
+    }
+
+    private void ensureCapacity(int nodes) {
+        if (nodes > level0.length) {
+            int cap = Math.max(nodes, level0.length + (level0.length >> 1));
+            level0 = Arrays.copyOf(level0, cap);
+            upper = Arrays.copyOf(upper, cap);
+        }
+    }
+
+    /** Generation-stamped visited marks reused per thread, so a search does not allocate an n-bit set. */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean add(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
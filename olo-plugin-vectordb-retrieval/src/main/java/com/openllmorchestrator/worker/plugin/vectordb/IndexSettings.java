@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.util.Set;
+
+/**
+ * Build-time settings for segments written by an ingestion.
+ *
+ * @param pqSubspaces number of PQ subspaces; 0 picks one subspace per {@link ProductQuantizer#DEFAULT_SUB_DIMENSION} dimensions
+ * @param buildThreads threads linking the HNSW graph of a segment
+ * @param maxSegmentChunks chunks per segment before an ingestion starts the next one
+ * @param mergeFactor segments of one size tier merged together on commit; below 2 disables merging
+ * @param filterFields metadata fields indexed for filtered search, besides path and extension
+ */
+record IndexSettings(VectorSimilarity similarity, int m, int efConstruction,
+                     VectorQuantizer.Mode quantization, int pqSubspaces,
+                     int buildThreads, int maxSegmentChunks, int mergeFactor, Set<String> filterFields) {
+
+    IndexSettings {
+        filterFields = filterFields != null ? Set.copyOf(filterFields) : Set.of();
+    }
+
+    IndexSettings withSimilarity(VectorSimilarity similarity) {
+        return new IndexSettings(similarity, m, efConstruction, quantization, pqSubspaces, buildThreads, maxSegmentChunks,
+                mergeFactor, filterFields);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Splits text into lexical terms for the BM25 index, identified by 64-bit FNV-1a hashes of the
+ * lower-cased term (no term strings are stored). Terms are runs of letters and digits; runs joined by
+ * single connector characters ({@code - _ . : / #}) also emit the joined form, so an identifier such as
+ * {@code ERR-4012} or {@code sku_88a.b} matches exactly as well as by its parts.
+ */
+final class LexicalAnalyzer {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private LexicalAnalyzer() {}
+
+    /** Emits the term hashes of {@code text} in order; returns how many were emitted. */
+    static int analyze(String text, LongConsumer sink) {
+        if (text == null) {
+            return 0;
+        }
+        int emitted = 0;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i >= n) break;
+            long compound = FNV_OFFSET;
+            int parts = 0;
+            while (true) {
+                long h = FNV_OFFSET;
+                while (i < n && Character.isLetterOrDigit(text.charAt(i))) {
+                    char c = Character.toLowerCase(text.charAt(i++));
+                    h = (h ^ c) * FNV_PRIME;
+                    compound = (compound ^ c) * FNV_PRIME;
+                }
+                sink.accept(h);
+                emitted++;
+                parts++;
+                if (i + 1 < n && isConnector(text.charAt(i)) && Character.isLetterOrDigit(text.charAt(i + 1))) {
+                    compound = (compound ^ text.charAt(i++)) * FNV_PRIME;
+                } else {
+                    break;
+                }
+            }
+            if (parts > 1) {
+                sink.accept(compound);
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    private static boolean isConnector(char c) {
+        return c == '-' || c == '_' || c == '.' || c == ':' || c == '/' || c == '#';
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index with BM25 scoring over the chunk text of one segment.
+ * <p>
+ * Built on the heap from the segment's chunks ({@link #build}) and written as four sections:
+ * <pre>
+ * LEX_TERMS    termCount int, avgDocLength float, termCount x term hash int64 (sorted),
+ *              termCount x docFreq int32, termCount x skip start int32 (-1 = none),
+ *              (termCount + 1) x postings offset int64
+ * LEX_POSTINGS per term: docFreq x (doc delta, term frequency) as variable-length ints
+ * LEX_SKIPS    per term with at least {@value #BLOCK} postings, per full block: last doc, end offset (int32)
+ * LEX_LENGTHS  count x uint8 document length in terms (exact below 128, then ~5% log steps)
+ * </pre>
+ * Postings are kept delta-encoded in int arrays while building and var-int packed on disk; a loaded index
+ * reads all sections through the mapping and resolves a term with a binary search over the hashes.
+ * Byte lengths let scoring use a 256-entry table of BM25 length norms instead of per-document arithmetic.
+ * <p>
+ * Query terms in more than {@value #COMMON_TERM_RATIO} of the chunks (e.g. "the", "error") do not
+ * select documents when rarer terms are present: they only add their score to documents the rare terms
+ * matched, jumping through their postings with the skip blocks. This keeps natural-language questions
+ * from decoding near-complete posting lists.
+ */
+final class LexicalIndex {
+
+    static final float K1 = 1.2f;
+    static final float B = 0.75f;
+    static final int BLOCK = 128;
+    static final double COMMON_TERM_RATIO = 0.05;
+
+    private static final ThreadLocal<float[]> ACCUMULATOR = ThreadLocal.withInitial(() -> new float[0]);
+
+    private final int termCount;
+    private final LongBuffer terms;
+    private final IntBuffer docFreqs;
+    private final IntBuffer skipStarts;
+    private final LongBuffer offsets;
+    private final ByteBuffer postings;
+    private final IntBuffer skips;
+    private final ByteBuffer lengths;
+    /** {@code K1 * (1 - B + B * length / avgDocLength)} per encoded length byte. */
+    private final float[] normTable = new float[256];
+
+    private LexicalIndex(int termCount, float avgDocLength, LongBuffer terms, IntBuffer docFreqs, IntBuffer skipStarts,
+                         LongBuffer offsets, ByteBuffer postings, IntBuffer skips, ByteBuffer lengths) {
+        this.termCount = termCount;
+        this.terms = terms;
+        this.docFreqs = docFreqs;
+        this.skipStarts = skipStarts;
+        this.offsets = offsets;
+        this.postings = postings;
+        this.skips = skips;
+        this.lengths = lengths;
+        float avg = Math.max(avgDocLength, 1f);
+        for (int i = 0; i < normTable.length; i++) {
+            normTable[i] = K1 * (1 - B + B * decodeLength(i) / avg);
+        }
+    }
+
+    static LexicalIndex load(ByteBuffer termSection, ByteBuffer postings, ByteBuffer skips, ByteBuffer lengths) {
+        int termCount = termSection.getInt(0);
+        float avgDocLength = termSection.getFloat(4);
+        int pos = 2 * Integer.BYTES;
+        LongBuffer terms = termSection.slice(pos, termCount * Long.BYTES).order(termSection.order()).asLongBuffer();
+        pos += termCount * Long.BYTES;
+        IntBuffer docFreqs = termSection.slice(pos, termCount * Integer.BYTES).order(termSection.order()).asIntBuffer();
+        pos += termCount * Integer.BYTES;
+        IntBuffer skipStarts = termSection.slice(pos, termCount * Integer.BYTES).order(termSection.order()).asIntBuffer();
+        pos += termCount * Integer.BYTES;
+        LongBuffer offsets = termSection.slice(pos, (termCount + 1) * Long.BYTES).order(termSection.order()).asLongBuffer();
+        return new LexicalIndex(termCount, avgDocLength, terms, docFreqs, skipStarts, offsets, postings,
+                skips.asIntBuffer(), lengths);
+    }
+
+    /** Number of chunks containing {@code term} (0 if absent). */
+    int docFreq(long term) {
+        int slot = find(term);
+        return slot < 0 ? 0 : docFreqs.get(slot);
+    }
+
+    /**
+     * BM25 top-{@code limit} documents for the given query terms as a min-queue.
+     * {@code idf[i]} is the (store-wide) inverse document frequency of {@code queryTerms[i]}.
+     * Rare terms are scored term-at-a-time into a per-thread accumulator; common terms then only score
+     * the documents found (see class comment).
+     *
+     * @param accept documents that may be returned, or null for all; rejected candidates are dropped before
+     *               the common terms are scored
+     */
+    NeighborQueue search(long[] queryTerms, float[] idf, int limit, DocIdBitmap accept) {
+        int count = lengths.limit();
+        float[] acc = ACCUMULATOR.get();
+        if (acc.length < count) {
+            acc = new float[count];
+            ACCUMULATOR.set(acc);
+        }
+        int commonDocFreq = (int) (count * COMMON_TERM_RATIO);
+        int[] rare = new int[queryTerms.length];
+        int[] common = new int[queryTerms.length];
+        int rareCount = 0;
+        int commonCount = 0;
+        for (int t = 0; t < queryTerms.length; t++) {
+            int slot = find(queryTerms[t]);
+            if (slot < 0) continue;
+            if (docFreqs.get(slot) > commonDocFreq) common[commonCount++] = t;
+            else rare[rareCount++] = t;
+        }
+        if (rareCount == 0) {
+            int[] swap = rare;
+            rare = common;
+            rareCount = commonCount;
+            common = swap;
+            commonCount = 0;
+        }
+
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (int r = 0; r < rareCount; r++) {
+            int t = rare[r];
+            int slot = find(queryTerms[t]);
+            int df = docFreqs.get(slot);
+            int pos = (int) offsets.get(slot);
+            float weight = idf[t] * (K1 + 1);
+            int doc = 0;
+            for (int i = 0; i < df; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = postings.get(pos++);
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                int freq = 0;
+                shift = 0;
+                do {
+                    b = postings.get(pos++);
+                    freq |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                if (acc[doc] == 0f) {
+                    if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+                    touched[touchedCount++] = doc;
+                }
+                acc[doc] += weight * freq / (freq + normTable[lengths.get(doc) & 0xFF]);
+            }
+        }
+        if (accept != null) {
+            int kept = 0;
+            for (int i = 0; i < touchedCount; i++) {
+                int doc = touched[i];
+                if (accept.contains(doc)) touched[kept++] = doc;
+                else acc[doc] = 0f;
+            }
+            touchedCount = kept;
+        }
+        if (commonCount > 0 && touchedCount > 0) {
+            Arrays.sort(touched, 0, touchedCount);
+            for (int c = 0; c < commonCount; c++) {
+                int t = common[c];
+                scoreCandidates(find(queryTerms[t]), idf[t] * (K1 + 1), touched, touchedCount, acc);
+            }
+        }
+        NeighborQueue top = new NeighborQueue(Math.max(1, limit), false);
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touched[i];
+            top.insertWithOverflow(doc, acc[doc], limit);
+            acc[doc] = 0f;
+        }
+        return top;
+    }
+
+    /** Adds the term's BM25 contribution to each of the sorted {@code docs} it occurs in, skipping whole blocks. */
+    private void scoreCandidates(int slot, float weight, int[] docs, int docCount, float[] acc) {
+        int df = docFreqs.get(slot);
+        int start = (int) offsets.get(slot);
+        int skipStart = skipStarts.get(slot);
+        int fullBlocks = skipStart < 0 ? 0 : df / BLOCK;
+        int pos = start;
+        int read = 0;
+        int doc = 0;
+        int freq = 0;
+        boolean current = false;
+        for (int i = 0; i < docCount; i++) {
+            int target = docs[i];
+            if (!current || doc < target) {
+                current = false;
+                for (int block = read / BLOCK; block < fullBlocks && skips.get(skipStart + 2 * block) < target; block++) {
+                    doc = skips.get(skipStart + 2 * block);
+                    pos = start + skips.get(skipStart + 2 * block + 1);
+                    read = (block + 1) * BLOCK;
+                }
+                while (read < df) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = postings.get(pos++);
+                        delta |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    freq = 0;
+                    shift = 0;
+                    do {
+                        b = postings.get(pos++);
+                        freq |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    doc += delta;
+                    read++;
+                    if (doc >= target) {
+                        current = true;
+                        break;
+                    }
+                }
+                if (!current) {
+                    return;
+                }
+            }
+            if (doc == target) {
+                acc[doc] += weight * freq / (freq + normTable[lengths.get(doc) & 0xFF]);
+            }
+        }
+    }
+
+    static byte encodeLength(int length) {
+        if (length < 128) {
+            return (byte) length;
+        }
+        return (byte) (128 + Math.min(127, (int) Math.round(Math.log(length / 128.0) / Math.log(1.05))));
+    }
+
+    static float decodeLength(int code) {
+        return code < 128 ? code : (float) (128 * Math.pow(1.05, code - 128));
+    }
+
+    /** BM25 inverse document frequency; always positive, so rare and common terms both add score. */
+    static float idf(long docCount, long docFreq) {
+        return (float) Math.log(1 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    private int find(long term) {
+        int lo = 0;
+        int hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long v = terms.get(mid);
+            if (v < term) lo = mid + 1;
+            else if (v > term) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /** Analyzes the chunk texts and returns a builder ready to write the sections. */
+    static Builder build(List<StoredChunk> chunks) {
+        Builder builder = new Builder(chunks.size());
+        Map<Long, int[]> docTerms = new HashMap<>();
+        for (int doc = 0; doc < chunks.size(); doc++) {
+            docTerms.clear();
+            int length = LexicalAnalyzer.analyze(chunks.get(doc).text(), h -> docTerms.computeIfAbsent(h, k -> new int[1])[0]++);
+            builder.lengths[doc] = length;
+            builder.totalLength += length;
+            for (Map.Entry<Long, int[]> e : docTerms.entrySet()) {
+                builder.postings.computeIfAbsent(e.getKey(), k -> new PostingsBuilder()).add(doc, e.getValue()[0]);
+            }
+        }
+        return builder;
+    }
+
+    /** Heap-side index for one segment being written. */
+    static final class Builder {
+        private final int[] lengths;
+        private long totalLength;
+        private final Map<Long, PostingsBuilder> postings = new HashMap<>();
+        private long[] sortedTerms;
+        private long[] termOffsets;
+        private int[] skipStarts;
+        private int[] skips = new int[16];
+        private int skipSize;
+
+        private Builder(int docCount) {
+            this.lengths = new int[docCount];
+        }
+
+        /** Writes LEX_POSTINGS and collects the skip blocks; must precede the other sections. */
+        void writePostings(ChannelOutput out) throws IOException {
+            sortedTerms = new long[postings.size()];
+            int i = 0;
+            for (Long term : postings.keySet()) sortedTerms[i++] = term;
+            Arrays.sort(sortedTerms);
+            termOffsets = new long[sortedTerms.length + 1];
+            skipStarts = new int[sortedTerms.length];
+            long start = out.position();
+            for (int t = 0; t < sortedTerms.length; t++) {
+                long termStart = out.position();
+                termOffsets[t] = termStart - start;
+                PostingsBuilder p = postings.get(sortedTerms[t]);
+                skipStarts[t] = p.docCount >= BLOCK ? skipSize : -1;
+                int doc = 0;
+                for (int j = 0; j < p.docCount; j++) {
+                    int delta = p.data[2 * j];
+                    doc += delta;
+                    writeVInt(out, delta);
+                    writeVInt(out, p.data[2 * j + 1]);
+                    if (skipStarts[t] >= 0 && (j + 1) % BLOCK == 0) {
+                        if (skipSize + 2 > skips.length) skips = Arrays.copyOf(skips, skips.length * 2);
+                        skips[skipSize++] = doc;
+                        skips[skipSize++] = (int) (out.position() - termStart);
+                    }
+                }
+            }
+            termOffsets[sortedTerms.length] = out.position() - start;
+        }
+
+        void writeTerms(ChannelOutput out) throws IOException {
+            out.putInt(sortedTerms.length);
+            out.putFloat(lengths.length == 0 ? 0f : (float) totalLength / lengths.length);
+            for (long term : sortedTerms) out.putLong(term);
+            for (long term : sortedTerms) out.putInt(postings.get(term).docCount);
+            for (int skipStart : skipStarts) out.putInt(skipStart);
+            for (long offset : termOffsets) out.putLong(offset);
+        }
+
+        void writeSkips(ChannelOutput out) throws IOException {
+            for (int i = 0; i < skipSize; i++) out.putInt(skips[i]);
+        }
+
+        void writeLengths(ChannelOutput out) throws IOException {
+            for (int length : lengths) out.putByte(encodeLength(length));
+        }
+
+        private static void writeVInt(ChannelOutput out, int v) throws IOException {
+            while ((v & ~0x7F) != 0) {
+                out.putByte((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.putByte((byte) v);
+        }
+    }
+
+    /** Growable int array of (doc delta, frequency) pairs in increasing doc order. */
+    private static final class PostingsBuilder {
+        private int[] data = new int[4];
+        private int docCount;
+        private int lastDoc;
+
+        void add(int doc, int freq) {
+            if (2 * docCount + 2 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[2 * docCount] = doc - lastDoc;
+            data[2 * docCount + 1] = freq;
+            lastDoc = doc;
+            docCount++;
+        }
+    }
+}
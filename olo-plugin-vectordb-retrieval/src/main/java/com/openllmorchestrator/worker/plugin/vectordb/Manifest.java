@@ -0,0 +1,129 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The list of live files in a store directory: a header line, one relative file name per line, then a
+ * CRC32C line over everything before it. It is written under a temporary name, forced to disk and atomically
+ * renamed; once the caller has forced the directory ({@link #forceDirectory}) the new list survives a crash,
+ * and until then a crash leaves the old one.
+ * <p>
+ * Opening a store deletes every segment file the manifest does not list, so a manifest that is empty, has
+ * no header or fails its checksum is an error, never "no live segments".
+ */
+final class Manifest {
+
+    static final String HEADER = "olo-vectordb-manifest 1";
+    private static final String CRC_PREFIX = "crc32c ";
+    private static final String LOCK_FILE = "write.lock";
+
+    private Manifest() {}
+
+    /** The entries of {@code file}, in order. */
+    static List<String> read(Path file) throws IOException {
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            if (!line.isBlank()) lines.add(line.trim());
+        }
+        if (lines.isEmpty()) {
+            throw new IOException("Empty manifest " + file);
+        }
+        if (!HEADER.equals(lines.get(0))) {
+            throw new IOException("Unreadable manifest " + file);
+        }
+        String last = lines.get(lines.size() - 1);
+        int crcLine = content.lastIndexOf(CRC_PREFIX);
+        if (!last.startsWith(CRC_PREFIX) || crcLine < 0 || !last.substring(CRC_PREFIX.length()).equals(crc(content.substring(0, crcLine)))) {
+            throw new IOException("Manifest failed its checksum: " + file);
+        }
+        return List.copyOf(lines.subList(1, lines.size() - 1));
+    }
+
+    /**
+     * Replaces {@code file} with {@code entries}. Everything it lists must already be on disk with its directory
+     * entry forced. The caller forces {@code file}'s directory afterwards; it does so only after it has started
+     * using the new list, so that a failing force is never taken as "not published" and the files deleted.
+     */
+    static void write(Path file, List<String> entries) throws IOException {
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        for (String entry : entries) {
+            sb.append(entry).append('\n');
+        }
+        String crc = crc(sb.toString());
+        sb.append(CRC_PREFIX).append(crc).append('\n');
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                ch.write(bytes);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Takes the exclusive writer lock of {@code dir}, held until the worker exits. Fails when another process
+     * has the directory open, since its staged segments would look like leftovers to this one.
+     */
+    static FileLock lock(Path dir) throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("vector store " + dir + " is in use by another process");
+        }
+        return lock;
+    }
+
+    /** Forces directory entries (renames, new files) to disk; Windows cannot open a directory for this and skips it. */
+    static void forceDirectory(Path dir) throws IOException {
+        if (File.separatorChar == '\\') {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        }
+    }
+
+    private static String crc(String content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Vectors read in place from the VECTORS section of a memory-mapped segment file.
+ * Scoring bulk-copies one vector at a time into a per-thread scratch array (a memcpy out of the page cache)
+ * so the {@link VectorKernels} run on arrays; the vectors themselves are never held on the heap.
+ */
+final class MappedFloatVectors implements VectorValues {
+
+    /** Per-thread copies of mapped vectors so the kernels run on arrays; grown on demand. */
+    private static final ThreadLocal<float[][]> SCRATCH = ThreadLocal.withInitial(() -> new float[2][0]);
+
+    private final FloatBuffer data;
+    private final int dimension;
+    private final int size;
+
+    MappedFloatVectors(FloatBuffer data, int dimension, int size) {
+        this.data = data;
+        this.dimension = dimension;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public float score(VectorSimilarity similarity, float[] query, int ord) {
+        float[] v = scratch(0);
+        data.get(ord * dimension, v, 0, dimension);
+        return similarity.score(query, 0, v, 0, dimension);
+    }
+
+    @Override
+    public float score(VectorSimilarity similarity, int a, int b) {
+        float[] va = scratch(0);
+        float[] vb = scratch(1);
+        data.get(a * dimension, va, 0, dimension);
+        data.get(b * dimension, vb, 0, dimension);
+        return similarity.score(va, 0, vb, 0, dimension);
+    }
+
+    @Override
+    public void copyTo(int ord, float[] dst) {
+        data.get(ord * dimension, dst, 0, dimension);
+    }
+
+    private float[] scratch(int slot) {
+        float[][] buffers = SCRATCH.get();
+        if (buffers[slot].length < dimension) {
+            buffers[slot] = new float[dimension];
+        }
+        return buffers[slot];
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Restricts a search to chunks matching every clause: the path starts with one of {@code pathPrefixes},
+ * the extension is one of {@code extensions}, and each metadata field equals one of its listed values.
+ * An empty clause does not restrict.
+ */
+record MetadataFilter(List<String> pathPrefixes, List<String> extensions, Map<String, List<String>> fields) {
+
+    MetadataFilter {
+        pathPrefixes = List.copyOf(pathPrefixes);
+        extensions = List.copyOf(extensions);
+        fields = Map.copyOf(fields);
+    }
+
+    /**
+     * Parses the plugin "filter" input: a map with optional "pathPrefix", "extension" (or "extensions") and
+     * any other key as a metadata field (e.g. "tenant"). Values may be a string or a list of strings.
+     *
+     * @return the filter, or null when {@code spec} is not a map or restricts nothing
+     */
+    static MetadataFilter from(Object spec) {
+        if (!(spec instanceof Map<?, ?> map)) {
+            return null;
+        }
+        List<String> prefixes = new ArrayList<>();
+        List<String> extensions = new ArrayList<>();
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            if (e.getKey() == null) continue;
+            String key = e.getKey().toString();
+            List<String> values = values(e.getValue());
+            if (values.isEmpty()) continue;
+            switch (key) {
+                case "pathPrefix", "pathPrefixes" -> prefixes.addAll(values);
+                case "extension", "extensions" -> extensions.addAll(values);
+                default -> fields.put(key, values);
+            }
+        }
+        if (prefixes.isEmpty() && extensions.isEmpty() && fields.isEmpty()) {
+            return null;
+        }
+        return new MetadataFilter(prefixes, extensions, fields);
+    }
+
+    private static List<String> values(Object value) {
+        List<String> out = new ArrayList<>();
+        if (value instanceof Collection<?> c) {
+            for (Object o : c) {
+                if (o != null && !o.toString().isBlank()) out.add(o.toString());
+            }
+        } else if (value != null && !value.toString().isBlank()) {
+            out.add(value.toString());
+        }
+        return out;
+    }
+
+    /**
+     * Ordinals of {@code index}'s segment that match: values within a clause are OR'ed, clauses AND'ed.
+     *
+     * @throws IllegalArgumentException if a metadata field was not indexed for filtering
+     */
+    DocIdBitmap evaluate(FilterIndex index) {
+        for (String field : fields.keySet()) {
+            if (!index.indexes(field)) {
+                throw new IllegalArgumentException("Metadata field '" + field
+                        + "' is not indexed for filtering; add it to VECTORDB_FILTER_FIELDS and re-ingest");
+            }
+        }
+        DocIdBitmap result = null;
+        if (!pathPrefixes.isEmpty()) {
+            DocIdBitmap clause = DocIdBitmap.EMPTY;
+            for (String prefix : pathPrefixes) clause = clause.or(index.prefix(FilterIndex.PATH, prefix));
+            result = clause;
+        }
+        if (!extensions.isEmpty()) {
+            DocIdBitmap clause = DocIdBitmap.EMPTY;
+            for (String ext : extensions) clause = clause.or(index.exact(FilterIndex.EXTENSION, ext));
+            result = result == null ? clause : result.and(clause);
+        }
+        for (Map.Entry<String, List<String>> field : fields.entrySet()) {
+            if (result != null && result.cardinality() == 0) {
+                return result;
+            }
+            DocIdBitmap clause = DocIdBitmap.EMPTY;
+            for (String value : field.getValue()) clause = clause.or(index.exact(field.getKey(), value));
+            result = result == null ? clause : result.and(clause);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of (node, score) pairs packed into primitive longs, so graph search does not box.
+ * A min-queue pops the lowest score first (used for the bounded result set); a max-queue pops the
+ * highest score first (used for the candidate frontier).
+ */
+final class NeighborQueue {
+
+    private final boolean maxFirst;
+    private long[] heap;
+    private int size;
+
+    NeighborQueue(int initialCapacity, boolean maxFirst) {
+        this.heap = new long[Math.max(1, initialCapacity)];
+        this.maxFirst = maxFirst;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int node, float score) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = encode(node, score);
+        siftUp(size++);
+    }
+
+    /**
+     * Adds the pair if the queue holds fewer than {@code limit} entries, or replaces the current
+     * top when the new score beats it. Only meaningful on a min-queue (bounded top-k).
+     *
+     * @return true if the pair was kept
+     */
+    boolean insertWithOverflow(int node, float score, int limit) {
+        if (size < limit) {
+            add(node, score);
+            return true;
+        }
+        if (score > topScore()) {
+            heap[0] = encode(node, score);
+            siftDown(0);
+            return true;
+        }
+        return false;
+    }
+
+    int topNode() {
+        return (int) heap[0];
+    }
+
+    float topScore() {
+        return decodeScore(heap[0]);
+    }
+
+    int pop() {
+        int node = (int) heap[0];
+        heap[0] = heap[--size];
+        if (size > 0) {
+            siftDown(0);
+        }
+        return node;
+    }
+
+    /** Node at raw heap position {@code i} (unordered iteration). */
+    int nodeAt(int i) {
+        return (int) heap[i];
+    }
+
+    /** Score at raw heap position {@code i} (unordered iteration). */
+    float scoreAt(int i) {
+        return decodeScore(heap[i]);
+    }
+
+    private long encode(int node, float score) {
+        int bits = sortableBits(score);
+        if (maxFirst) {
+            bits = ~bits;
+        }
+        return ((long) bits << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    private float decodeScore(long v) {
+        int bits = (int) (v >>> 32);
+        if (maxFirst) {
+            bits = ~bits;
+        }
+        return fromSortableBits(bits);
+    }
+
+    /** Maps float ordering onto signed int ordering (IEEE-754 trick also used by Lucene). */
+    private static int sortableBits(float f) {
+        int bits = Float.floatToIntBits(f);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+
+    private static float fromSortableBits(int bits) {
+        return Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7FFFFFFF));
+    }
+
+    private void siftUp(int i) {
+        long v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= v) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = v;
+    }
+
+    private void siftDown(int i) {
+        long v = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && heap[right] < heap[child]) {
+                child = right;
+            }
+            if (v <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = v;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.util.Arrays;
+
+/**
+ * Growable on-heap vectors in fixed-size float[] pages (no per-vector objects, no boxing), so
+ * millions of embeddings fit without exceeding array limits. Used while a segment is being built.
+ */
+final class PagedFloatVectors implements VectorValues {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final int dimension;
+    private float[][] pages = new float[0][];
+    private int size;
+
+    PagedFloatVectors(int dimension) {
+        if (dimension <= 0) throw new IllegalArgumentException("dimension must be > 0");
+        this.dimension = dimension;
+    }
+
+    /** Appends a vector and returns its ordinal. */
+    int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("vector dimension " + vector.length + " != " + dimension);
+        }
+        int ord = size;
+        int page = ord >>> PAGE_BITS;
+        if (page == pages.length) {
+            pages = Arrays.copyOf(pages, page + 1);
+            pages[page] = new float[PAGE_SIZE * dimension];
+        }
+        System.arraycopy(vector, 0, pages[page], (ord & PAGE_MASK) * dimension, dimension);
+        size++;
+        return ord;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public float score(VectorSimilarity similarity, float[] query, int ord) {
+        return similarity.score(query, 0, pages[ord >>> PAGE_BITS], (ord & PAGE_MASK) * dimension, dimension);
+    }
+
+    @Override
+    public float score(VectorSimilarity similarity, int a, int b) {
+        return similarity.score(pages[a >>> PAGE_BITS], (a & PAGE_MASK) * dimension,
+                pages[b >>> PAGE_BITS], (b & PAGE_MASK) * dimension, dimension);
+    }
+
+    @Override
+    public void copyTo(int ord, float[] dst) {
+        System.arraycopy(pages[ord >>> PAGE_BITS], (ord & PAGE_MASK) * dimension, dst, 0, dimension);
+    }
+}
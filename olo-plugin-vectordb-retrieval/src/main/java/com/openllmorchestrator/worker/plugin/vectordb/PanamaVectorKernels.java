@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * {@code jdk.incubator.vector} kernels over {@link FloatVector#SPECIES_PREFERRED} (AVX2 / AVX-512 / NEON),
+ * two accumulators per loop with a scalar tail. Only instantiated reflectively by {@link VectorKernels}
+ * so that a JVM without the incubator module never links this class.
+ * Byte-code kernels widen bytes with a byte species of the same lane count, which needs at least 8 float
+ * lanes; on 128-bit CPUs they use the scalar kernels.
+ */
+final class PanamaVectorKernels implements VectorKernels {
+
+    private static final VectorSpecies<Float> FLOAT = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE = FLOAT.length() >= 8
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(FLOAT.length() * Byte.SIZE))
+            : null;
+    /** FMA is emulated (very slowly) on CPUs without it, so only use it when HotSpot does. */
+    private static final boolean USE_FMA = hotSpotUsesFma();
+
+    private final ScalarVectorKernels scalar = new ScalarVectorKernels();
+
+    PanamaVectorKernels() {
+        if (FLOAT.vectorBitSize() < 128) {
+            throw new UnsupportedOperationException("preferred vector size " + FLOAT.vectorBitSize() + " bits is too small");
+        }
+    }
+
+    @Override
+    public String name() {
+        return "panama-" + FLOAT.vectorBitSize();
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int step = FLOAT.length();
+        int bound = FLOAT.loopBound(length);
+        int i = 0;
+        float sum = 0f;
+        if (bound > 0) {
+            FloatVector acc0 = FloatVector.zero(FLOAT);
+            FloatVector acc1 = FloatVector.zero(FLOAT);
+            for (int unrolled = length & -(2 * step); i < unrolled; i += 2 * step) {
+                acc0 = mulAdd(FloatVector.fromArray(FLOAT, a, aOffset + i), FloatVector.fromArray(FLOAT, b, bOffset + i), acc0);
+                acc1 = mulAdd(FloatVector.fromArray(FLOAT, a, aOffset + i + step),
+                        FloatVector.fromArray(FLOAT, b, bOffset + i + step), acc1);
+            }
+            for (; i < bound; i += step) {
+                acc0 = mulAdd(FloatVector.fromArray(FLOAT, a, aOffset + i), FloatVector.fromArray(FLOAT, b, bOffset + i), acc0);
+            }
+            sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int step = FLOAT.length();
+        int bound = FLOAT.loopBound(length);
+        int i = 0;
+        float sum = 0f;
+        if (bound > 0) {
+            FloatVector acc0 = FloatVector.zero(FLOAT);
+            FloatVector acc1 = FloatVector.zero(FLOAT);
+            for (int unrolled = length & -(2 * step); i < unrolled; i += 2 * step) {
+                FloatVector d0 = FloatVector.fromArray(FLOAT, a, aOffset + i).sub(FloatVector.fromArray(FLOAT, b, bOffset + i));
+                FloatVector d1 = FloatVector.fromArray(FLOAT, a, aOffset + i + step)
+                        .sub(FloatVector.fromArray(FLOAT, b, bOffset + i + step));
+                acc0 = mulAdd(d0, d0, acc0);
+                acc1 = mulAdd(d1, d1, acc1);
+            }
+            for (; i < bound; i += step) {
+                FloatVector d = FloatVector.fromArray(FLOAT, a, aOffset + i).sub(FloatVector.fromArray(FLOAT, b, bOffset + i));
+                acc0 = mulAdd(d, d, acc0);
+            }
+            sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(float[] weights, byte[] codes, int codesOffset, int length) {
+        if (BYTE == null) {
+            return scalar.dot(weights, codes, codesOffset, length);
+        }
+        int step = FLOAT.length();
+        int bound = FLOAT.loopBound(length);
+        int i = 0;
+        float sum = 0f;
+        if (bound > 0) {
+            FloatVector acc = FloatVector.zero(FLOAT);
+            for (; i < bound; i += step) {
+                acc = mulAdd(FloatVector.fromArray(FLOAT, weights, i), widen(codes, codesOffset + i), acc);
+            }
+            sum = acc.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += weights[i] * codes[codesOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squareDistance(float[] a, float[] scale, byte[] codes, int codesOffset, int length) {
+        if (BYTE == null) {
+            return scalar.squareDistance(a, scale, codes, codesOffset, length);
+        }
+        int step = FLOAT.length();
+        int bound = FLOAT.loopBound(length);
+        int i = 0;
+        float sum = 0f;
+        if (bound > 0) {
+            FloatVector acc = FloatVector.zero(FLOAT);
+            for (; i < bound; i += step) {
+                FloatVector d = FloatVector.fromArray(FLOAT, a, i)
+                        .sub(FloatVector.fromArray(FLOAT, scale, i).mul(widen(codes, codesOffset + i)));
+                acc = mulAdd(d, d, acc);
+            }
+            sum = acc.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            float d = a[i] - scale[i] * codes[codesOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    private static FloatVector widen(byte[] codes, int offset) {
+        return (FloatVector) ByteVector.fromArray(BYTE, codes, offset).convertShape(VectorOperators.B2F, FLOAT, 0);
+    }
+
+    private static FloatVector mulAdd(FloatVector x, FloatVector y, FloatVector acc) {
+        return USE_FMA ? x.fma(y, acc) : x.mul(y).add(acc);
+    }
+
+    private static boolean hotSpotUsesFma() {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(bean.getVMOption("UseFMA").getValue());
+        } catch (RuntimeException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Product quantization: the vector is split into {@code subspaces} contiguous sub-vectors and each is
+ * replaced by the id of its nearest of up to 256 k-means centroids, so a vector costs one byte per
+ * subspace (16x smaller than float32 with the default 4 dimensions per subspace).
+ * <p>
+ * Queries use asymmetric distance computation: a per-query table holds the score of every query
+ * sub-vector against every centroid, and a code is scored with {@code subspaces} table lookups.
+ */
+final class ProductQuantizer implements VectorQuantizer {
+
+    /** Default dimensions per subspace when no subspace count is configured. */
+    static final int DEFAULT_SUB_DIMENSION = 4;
+
+    private static final int MAX_CENTROIDS = 256;
+    private static final int TRAINING_SAMPLE = 8192;
+    private static final int KMEANS_ITERATIONS = 10;
+
+    private final int dimension;
+    private final int subspaces;
+    private final int subDim;
+    private final int centroidCount;
+    /** [subspace][centroid][subDim] flattened. */
+    private final float[] centroids;
+
+    private ProductQuantizer(int dimension, int subspaces, int centroidCount, float[] centroids) {
+        this.dimension = dimension;
+        this.subspaces = subspaces;
+        this.subDim = dimension / subspaces;
+        this.centroidCount = centroidCount;
+        this.centroids = centroids;
+    }
+
+    /**
+     * Trains per-subspace k-means on a sample of {@code vectors}.
+     *
+     * @param requestedSubspaces desired subspace count (0 = dimension / {@value #DEFAULT_SUB_DIMENSION});
+     *                           rounded down to a divisor of the dimension
+     */
+    static ProductQuantizer train(VectorValues vectors, int requestedSubspaces) {
+        int dim = vectors.dimension();
+        int subspaces = subspaceCount(dim, requestedSubspaces);
+        int subDim = dim / subspaces;
+        SplittableRandom random = new SplittableRandom(17L);
+
+        int n = vectors.size();
+        int sampleSize = Math.min(n, TRAINING_SAMPLE);
+        float[][] sample = new float[sampleSize][dim];
+        for (int i = 0; i < sampleSize; i++) {
+            int ord = sampleSize == n ? i : random.nextInt(n);
+            vectors.copyTo(ord, sample[i]);
+        }
+        int k = Math.max(1, Math.min(MAX_CENTROIDS, sampleSize));
+        float[] centroids = new float[subspaces * k * subDim];
+        // Subspaces are independent, so their k-means runs are spread across cores.
+        IntStream.range(0, subspaces).parallel()
+                .forEach(s -> trainSubspace(sample, s * subDim, subDim, k, centroids, s * k * subDim, new SplittableRandom(17L + s)));
+        return new ProductQuantizer(dim, subspaces, k, centroids);
+    }
+
+    private static void trainSubspace(float[][] sample, int off, int subDim, int k, float[] centroids, int cBase,
+                                      SplittableRandom random) {
+        int n = sample.length;
+        int[] assignment = new int[n];
+        float[] sums = new float[k * subDim];
+        int[] counts = new int[k];
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(sample[random.nextInt(n)], off, centroids, cBase + c * subDim, subDim);
+        }
+        for (int iter = 0; iter < KMEANS_ITERATIONS; iter++) {
+            for (int i = 0; i < n; i++) {
+                assignment[i] = nearest(sample[i], off, centroids, cBase, k, subDim);
+            }
+            Arrays.fill(sums, 0f);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                int c = assignment[i];
+                counts[c]++;
+                for (int d = 0; d < subDim; d++) {
+                    sums[c * subDim + d] += sample[i][off + d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    // Re-seed empty clusters from a random sample so all codes stay useful.
+                    System.arraycopy(sample[random.nextInt(n)], off, centroids, cBase + c * subDim, subDim);
+                    continue;
+                }
+                for (int d = 0; d < subDim; d++) {
+                    centroids[cBase + c * subDim + d] = sums[c * subDim + d] / counts[c];
+                }
+            }
+        }
+    }
+
+    static ProductQuantizer read(ByteBuffer in) {
+        int dimension = in.getInt();
+        int subspaces = in.getInt();
+        int k = in.getInt();
+        float[] centroids = new float[subspaces * k * (dimension / subspaces)];
+        for (int i = 0; i < centroids.length; i++) centroids[i] = in.getFloat();
+        return new ProductQuantizer(dimension, subspaces, k, centroids);
+    }
+
+    private static int subspaceCount(int dim, int requested) {
+        int target = requested > 0 ? Math.min(requested, dim) : Math.max(1, dim / DEFAULT_SUB_DIMENSION);
+        for (int s = target; s > 1; s--) {
+            if (dim % s == 0) return s;
+        }
+        return 1;
+    }
+
+    private static int nearest(float[] v, int off, float[] centroids, int cBase, int k, int subDim) {
+        int best = 0;
+        float bestDist = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float dist = VectorSimilarity.squareDistance(v, off, centroids, cBase + c * subDim, subDim);
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public Mode mode() {
+        return Mode.PQ;
+    }
+
+    @Override
+    public int codeBytes() {
+        return subspaces;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] dst, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            dst[offset + s] = (byte) nearest(vector, s * subDim, centroids, s * centroidCount * subDim, centroidCount, subDim);
+        }
+    }
+
+    @Override
+    public QueryScorer scorer(VectorSimilarity similarity, float[] query, ByteBuffer codes) {
+        float[] table = new float[subspaces * centroidCount];
+        for (int s = 0; s < subspaces; s++) {
+            int cBase = s * centroidCount * subDim;
+            for (int c = 0; c < centroidCount; c++) {
+                table[s * centroidCount + c] = similarity == VectorSimilarity.EUCLIDEAN
+                        ? -VectorSimilarity.squareDistance(query, s * subDim, centroids, cBase + c * subDim, subDim)
+                        : VectorSimilarity.dot(query, s * subDim, centroids, cBase + c * subDim, subDim);
+            }
+        }
+        int m = subspaces;
+        int k = centroidCount;
+        return ord -> {
+            int base = ord * m;
+            float sum = 0f;
+            for (int s = 0; s < m; s++) {
+                sum += table[s * k + (codes.get(base + s) & 0xFF)];
+            }
+            return sum;
+        };
+    }
+
+    @Override
+    public void writeTo(ChannelOutput out) throws IOException {
+        out.putInt(dimension);
+        out.putInt(subspaces);
+        out.putInt(centroidCount);
+        for (float f : centroids) out.putFloat(f);
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.util.Locale;
+
+/** Which indexes answer a query; {@link #HYBRID} fuses vector and BM25 rankings with reciprocal rank fusion. */
+enum RetrievalMode {
+    VECTOR,
+    LEXICAL,
+    HYBRID;
+
+    static RetrievalMode parse(String name, RetrievalMode defaultValue) {
+        if (name == null || name.isBlank()) return defaultValue;
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "vector": case "ann": return VECTOR;
+            case "lexical": case "bm25": case "keyword": return LEXICAL;
+            case "hybrid": return HYBRID;
+            default: return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+/**
+ * One retrieval against the store.
+ *
+ * @param vector query embedding (unprepared); required unless {@code mode} is LEXICAL
+ * @param text query text for the BM25 index; required unless {@code mode} is VECTOR
+ * @param fusionDepth how many hits each ranking contributes to reciprocal rank fusion
+ * @param rrfK RRF damping constant: a hit at rank r (1-based) adds {@code 1 / (rrfK + r)}
+ * @param filter metadata restriction applied inside both rankings, or null for none
+ */
+record SearchRequest(float[] vector, String text, int topK, int efSearch, int rerankFactor,
+                     RetrievalMode mode, int fusionDepth, int rrfK, MetadataFilter filter) {
+}
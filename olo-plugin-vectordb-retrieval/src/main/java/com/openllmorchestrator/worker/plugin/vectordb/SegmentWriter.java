@@ -0,0 +1,240 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes an immutable segment file (see {@link VectorSegment} for the layout). The file is written
+ * under a temporary name, forced to disk and then atomically renamed, so a crash never leaves a
+ * half-written segment under its final name.
+ */
+final class SegmentWriter {
+
+    /** Mapped segments are addressed with int offsets, so a single file must stay below 2 GiB. */
+    static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE - (1L << 20);
+
+    private static final int ALIGNMENT = 64;
+
+    private SegmentWriter() {}
+
+    /**
+     * Upper estimate of the file size of a segment with {@code count} chunks whose payloads take
+     * {@code payloadBytes} (see {@link #payloadBytes}): vectors, both graph levels, payload offsets and codes
+     * exactly or from the level distribution, and the payloads counted three times to cover the BM25 and
+     * filter indexes built from them. Ingestions roll over to a new segment before this passes
+     * {@link #MAX_SEGMENT_BYTES}, so an oversized segment is not discovered only after it has been built.
+     */
+    static long estimateBytes(int dimension, int m, long count, long payloadBytes, VectorQuantizer.Mode quantization) {
+        long vectors = count * dimension * Float.BYTES;
+        long level0 = count * (2L * m + 1) * Integer.BYTES;
+        // About count / M nodes have upper levels; budget two levels of (M + 1) links each, plus node and level.
+        long upper = count * (2L * (m + 1) + 2) * Integer.BYTES / Math.max(2, m);
+        long offsets = (count + 1) * Long.BYTES;
+        long codes = quantization != VectorQuantizer.Mode.NONE ? count * dimension : 0;
+        long padding = 16L * ALIGNMENT + 4096;
+        return vectors + level0 + upper + offsets + codes + 3 * payloadBytes + padding;
+    }
+
+    /** Bytes {@code chunk} takes in the PAYLOADS section. */
+    static long payloadBytes(StoredChunk chunk) {
+        long bytes = Integer.BYTES + stringBytes(chunk.text()) + stringBytes(chunk.path()) + Integer.BYTES;
+        for (Map.Entry<String, String> e : chunk.metadata().entrySet()) {
+            bytes += stringBytes(e.getKey()) + stringBytes(e.getValue());
+        }
+        return bytes;
+    }
+
+    /**
+     * @param quantizer trained quantizer whose codes are stored alongside the floats, or null for none
+     * @param filterFields metadata fields indexed for filtered search (path and extension always are)
+     */
+    static void write(Path file, VectorValues vectors, HnswIndex graph, List<StoredChunk> chunks, VectorQuantizer quantizer,
+                      Set<String> filterFields) throws IOException {
+        int count = vectors.size();
+        if (chunks.size() != count || graph.size() != count) {
+            throw new IllegalArgumentException("vectors, graph and chunks must have the same size");
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int sectionCount = quantizer != null ? 12 : 10;
+        int headerBytes = VectorSegment.HEADER_INTS * Integer.BYTES + sectionCount * VectorSegment.SECTION_ENTRY_BYTES;
+        List<long[]> sections = new ArrayList<>(sectionCount);
+        LexicalIndex.Builder lexical = LexicalIndex.build(chunks);
+        FilterIndex filter = FilterIndex.build(chunks, filterFields);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ChannelOutput out = new ChannelOutput(ch, headerBytes);
+
+            out.align(ALIGNMENT);
+            long start = out.position();
+            float[] scratch = new float[vectors.dimension()];
+            for (int ord = 0; ord < count; ord++) {
+                vectors.copyTo(ord, scratch);
+                for (float f : scratch) {
+                    out.putFloat(f);
+                }
+            }
+            sections.add(new long[] {VectorSegment.SECTION_VECTORS, start, out.position() - start});
+
+            out.align(ALIGNMENT);
+            start = out.position();
+            graph.writeLevel0(out);
+            sections.add(new long[] {VectorSegment.SECTION_GRAPH_L0, start, out.position() - start});
+
+            out.align(ALIGNMENT);
+            start = out.position();
+            graph.writeUpper(out);
+            sections.add(new long[] {VectorSegment.SECTION_GRAPH_UPPER, start, out.position() - start});
+
+            out.align(ALIGNMENT);
+            start = out.position();
+            long[] offsets = new long[count + 1];
+            for (int ord = 0; ord < count; ord++) {
+                offsets[ord] = out.position() - start;
+                writePayload(out, chunks.get(ord));
+            }
+            offsets[count] = out.position() - start;
+            sections.add(new long[] {VectorSegment.SECTION_PAYLOADS, start, out.position() - start});
+
+            out.align(Long.BYTES);
+            start = out.position();
+            for (long offset : offsets) {
+                out.putLong(offset);
+            }
+            sections.add(new long[] {VectorSegment.SECTION_PAYLOAD_OFFSETS, start, out.position() - start});
+
+            if (quantizer != null) {
+                out.align(Integer.BYTES);
+                start = out.position();
+                out.putInt(quantizer.mode().ordinal());
+                quantizer.writeTo(out);
+                sections.add(new long[] {VectorSegment.SECTION_QUANT_META, start, out.position() - start});
+
+                out.align(ALIGNMENT);
+                start = out.position();
+                byte[] code = new byte[quantizer.codeBytes()];
+                for (int ord = 0; ord < count; ord++) {
+                    vectors.copyTo(ord, scratch);
+                    quantizer.encode(scratch, code, 0);
+                    out.putBytes(code);
+                }
+                sections.add(new long[] {VectorSegment.SECTION_QUANT_CODES, start, out.position() - start});
+            }
+
+            start = out.position();
+            lexical.writePostings(out);
+            sections.add(new long[] {VectorSegment.SECTION_LEX_POSTINGS, start, out.position() - start});
+
+            out.align(Long.BYTES);
+            start = out.position();
+            lexical.writeTerms(out);
+            sections.add(new long[] {VectorSegment.SECTION_LEX_TERMS, start, out.position() - start});
+
+            start = out.position();
+            lexical.writeSkips(out);
+            sections.add(new long[] {VectorSegment.SECTION_LEX_SKIPS, start, out.position() - start});
+
+            start = out.position();
+            lexical.writeLengths(out);
+            sections.add(new long[] {VectorSegment.SECTION_LEX_LENGTHS, start, out.position() - start});
+
+            out.align(Long.BYTES);
+            start = out.position();
+            filter.writeTo(out);
+            sections.add(new long[] {VectorSegment.SECTION_FILTER, start, out.position() - start});
+            out.flush();
+            if (out.position() > MAX_SEGMENT_BYTES) {
+                throw new IOException("Segment exceeds " + MAX_SEGMENT_BYTES + " bytes; lower VECTORDB_SEGMENT_MAX_CHUNKS");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(VectorSegment.MAGIC)
+                    .putInt(VectorSegment.VERSION)
+                    .putInt(vectors.dimension())
+                    .putInt(count)
+                    .putInt(graph.similarity().ordinal())
+                    .putInt(graph.m())
+                    .putInt(graph.entryPoint())
+                    .putInt(graph.maxLevel())
+                    .putInt(sectionCount);
+            for (long[] s : sections) {
+                header.putInt((int) s[0]).putInt(0).putLong(s[1]).putLong(s[2]);
+            }
+            header.flip();
+            long headerPos = 0;
+            while (header.hasRemaining()) {
+                headerPos += ch.write(header, headerPos);
+            }
+            ch.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writePayload(ChannelOutput out, StoredChunk chunk) throws IOException {
+        out.putInt(chunk.chunkIndex());
+        writeString(out, chunk.text());
+        writeString(out, chunk.path());
+        out.putInt(chunk.metadata().size());
+        for (Map.Entry<String, String> e : chunk.metadata().entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+    }
+
+    /** Length prefix plus UTF-8 length of {@code s}, without encoding it. */
+    private static long stringBytes(String s) {
+        long bytes = Integer.BYTES;
+        if (s == null) {
+            return bytes;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                bytes += 2; // a surrogate pair encodes to 4 bytes, 2 per char
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static void writeString(ChannelOutput out, String s) throws IOException {
+        if (s == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.putBytes(bytes);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.util.Map;
+
+/**
+ * Payload kept per stored vector and returned with search hits: chunk text, source path, the chunk's
+ * index within its document (-1 when unknown) and any extra scalar string attributes (e.g. "tenant").
+ */
+record StoredChunk(String text, String path, int chunkIndex, Map<String, String> metadata) {
+
+    /** Metadata attribute naming the tenant a chunk belongs to; part of the chunk's {@link #key() identity}. */
+    static final String TENANT = "tenant";
+
+    StoredChunk {
+        metadata = metadata != null ? Map.copyOf(metadata) : Map.of();
+    }
+
+    /**
+     * Identity of the chunk within one ingestion: normalized path, chunk index and tenant; the last chunk added
+     * with an identity wins. Null when the chunk has no path or index.
+     */
+    String key() {
+        if (path == null || chunkIndex < 0) {
+            return null;
+        }
+        return FilterIndex.normalizePath(path) + '\0' + chunkIndex + '\0' + tenant();
+    }
+
+    /** The chunk's tenant, or "" when it has none. */
+    String tenant() {
+        return metadata.getOrDefault(TENANT, "");
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A named collection of chunks, sharded across independent {@link VectorStore}s (one directory and writer lock
+ * each). Ingestion spreads chunks round-robin over the shards; a search runs on every shard in
+ * parallel and the per-shard top-k lists are merged with a bounded heap. Collections share nothing but the
+ * search threads, so a bulk load into one never blocks queries on another.
+ * <p>
+ * Layout: {@code <dir>/shard-<i>}, with the shard count fixed by the directories present when the collection
+ * is first opened. One {@value #MANIFEST} in {@code <dir>} lists the live segments of every shard, so an
+ * ingestion spanning several shards is published by a single atomic replace and a crash never leaves it
+ * visible in some shards only. The directory's {@link Manifest#lock writer lock} is held while the collection
+ * is open.
+ */
+final class VectorCollection {
+
+    static final String DEFAULT = "default";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_.-]{0,63}");
+    static final String MANIFEST = "collection.manifest";
+    private static final String SHARD_PREFIX = "shard-";
+    private static final Pattern SHARD_ENTRY = Pattern.compile(SHARD_PREFIX + "(\\d+)/(.+)");
+
+    /** Shared by all collections; searches are CPU-bound, so one thread per core. */
+    private static final ExecutorService SEARCH_POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            Thread.ofPlatform().daemon().name("vectordb-search-", 0).factory());
+
+    /** Accumulated RRF score of one chunk; NaN marks a ranking the chunk did not appear in. */
+    private static final class Fused {
+        double score;
+        float vectorScore = Float.NaN;
+        float lexicalScore = Float.NaN;
+    }
+
+    /** Both rankings of one shard for a hybrid search. */
+    private record ShardHits(List<VectorStore.Hit> vector, List<VectorStore.Hit> lexical) {}
+
+    private final String name;
+    private final Path dir;
+    /** {@value #MANIFEST} in {@link #dir}. */
+    private final Path manifest;
+    /** Held for the life of the worker. */
+    private final FileLock lock;
+    private final VectorStore[] shards;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+
+    private VectorCollection(String name, Path dir, FileLock lock, VectorStore[] shards) {
+        this.name = name;
+        this.dir = dir;
+        this.manifest = dir.resolve(MANIFEST);
+        this.lock = lock;
+        this.shards = shards;
+    }
+
+    /**
+     * Opens (or creates with {@code shardCount} shards) the collection stored under {@code dir}: takes the
+     * directory lock, maps the segments the manifest lists and removes unlisted segment files. An empty or
+     * unreadable manifest fails the open and deletes nothing.
+     *
+     * @throws IllegalArgumentException if {@code name} is not 1-64 letters, digits, '_', '.' or '-'
+     */
+    static VectorCollection open(String name, Path dir, int shardCount) throws IOException {
+        checkName(name);
+        Files.createDirectories(dir);
+        FileLock lock = Manifest.lock(dir);
+        try {
+            int existing = 0;
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(dir, SHARD_PREFIX + "*")) {
+                for (Path d : dirs) {
+                    if (Files.isDirectory(d)) existing++;
+                }
+            }
+            int count = existing > 0 ? existing : Math.max(1, shardCount);
+            List<List<String>> live = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                live.add(new ArrayList<>());
+            }
+            Path manifest = dir.resolve(MANIFEST);
+            if (Files.exists(manifest)) {
+                for (String entry : Manifest.read(manifest)) {
+                    Matcher m = SHARD_ENTRY.matcher(entry);
+                    int shard = m.matches() ? Integer.parseInt(m.group(1)) : -1;
+                    if (shard < 0 || shard >= count) {
+                        throw new IOException("Unreadable manifest " + manifest + ": " + entry);
+                    }
+                    live.get(shard).add(m.group(2));
+                }
+            }
+            VectorStore[] shards = new VectorStore[count];
+            for (int i = 0; i < count; i++) {
+                shards[i] = VectorStore.open(dir.resolve(SHARD_PREFIX + i), live.get(i));
+            }
+            return new VectorCollection(name, dir, lock, shards);
+        } catch (IOException | RuntimeException e) {
+            lock.channel().close();
+            throw e;
+        }
+    }
+
+    static void checkName(String name) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid collection name: " + name);
+        }
+    }
+
+    String name() {
+        return name;
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    int size() {
+        int n = 0;
+        for (VectorStore shard : shards) {
+            n += shard.size();
+        }
+        return n;
+    }
+
+    /** Vector dimension of the stored chunks, or -1 while the collection is empty. */
+    int dimension() {
+        for (VectorStore shard : shards) {
+            int dimension = shard.dimension();
+            if (dimension >= 0) return dimension;
+        }
+        return -1;
+    }
+
+    /**
+     * Starts a bulk load into every shard (taking each shard's writer lock in shard order). The similarity and
+     * dimension of existing data win over {@code settings}, so all shards stay consistent.
+     */
+    Ingestion ingest(IndexSettings settings) throws IOException {
+        List<VectorStore.Ingestion> started = new ArrayList<>(shards.length);
+        try {
+            VectorSimilarity similarity = null;
+            int dimension = -1;
+            for (VectorStore shard : shards) {
+                if (similarity == null) similarity = shard.similarity();
+                if (dimension < 0) dimension = shard.dimension();
+            }
+            IndexSettings effective = similarity != null ? settings.withSimilarity(similarity) : settings;
+            for (VectorStore shard : shards) {
+                started.add(shard.ingest(effective));
+            }
+            return new Ingestion(started, dimension);
+        } catch (IOException | RuntimeException e) {
+            for (VectorStore.Ingestion i : started) i.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns up to {@code topK} chunks best-first as maps with text, path, index, metadata and score.
+     * In {@link RetrievalMode#HYBRID} the vector and BM25 rankings (each {@code fusionDepth} deep) are fused
+     * with reciprocal rank fusion; "score" is then the fused score and "vectorScore" / "lexicalScore" carry the
+     * underlying scores of the rankings the chunk appeared in. BM25 uses document frequencies summed over all
+     * shards, so shard placement does not change lexical scores. Latency is recorded for {@link #searchLatency()}.
+     */
+    List<Map<String, Object>> search(SearchRequest request) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return searchShards(request);
+        } finally {
+            searchLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /** Search latencies of this collection since the worker started. */
+    LatencyHistogram searchLatency() {
+        return searchLatency;
+    }
+
+    private List<Map<String, Object>> searchShards(SearchRequest request) throws IOException {
+        int topK = request.topK();
+        RetrievalMode mode = request.mode();
+        if (request.text() == null || request.text().isBlank()) {
+            mode = RetrievalMode.VECTOR;
+        } else if (request.vector() == null) {
+            mode = RetrievalMode.LEXICAL;
+        }
+        if (mode == RetrievalMode.VECTOR) {
+            List<List<VectorStore.Hit>> perShard = fanOut(shard -> shard.vectorHits(
+                    request.vector(), topK, request.efSearch(), request.rerankFactor(), request.filter()));
+            return toResults(merge(perShard, topK));
+        }
+        long[] terms = analyze(request.text());
+        float[] idf = idf(terms);
+        if (mode == RetrievalMode.LEXICAL) {
+            return toResults(merge(fanOut(shard -> shard.lexicalHits(terms, idf, topK, request.filter())), topK));
+        }
+        int depth = Math.max(topK, request.fusionDepth());
+        List<ShardHits> perShard = fanOut(shard -> new ShardHits(
+                shard.vectorHits(request.vector(), depth, request.efSearch(), request.rerankFactor(), request.filter()),
+                shard.lexicalHits(terms, idf, depth, request.filter())));
+        List<List<VectorStore.Hit>> vector = new ArrayList<>(perShard.size());
+        List<List<VectorStore.Hit>> lexical = new ArrayList<>(perShard.size());
+        for (ShardHits hits : perShard) {
+            vector.add(hits.vector());
+            lexical.add(hits.lexical());
+        }
+        return fuse(merge(vector, depth), merge(lexical, depth), request.rrfK(), topK);
+    }
+
+    /**
+     * Recall@k of the vector search for {@code request} (honouring its filter): the fraction of the exact
+     * (brute-force) top-k that the index search returns. Scans every matching vector, so meant for sampling /
+     * tuning, not every request.
+     */
+    double recall(SearchRequest request) throws IOException {
+        int topK = request.topK();
+        if (topK <= 0 || request.vector() == null) {
+            return 1.0;
+        }
+        List<VectorStore.Hit> approx = merge(fanOut(shard -> shard.vectorHits(
+                request.vector(), topK, request.efSearch(), request.rerankFactor(), request.filter())), topK);
+        List<VectorStore.Hit> exact = merge(fanOut(shard -> shard.exactHits(request.vector(), topK, request.filter())), topK);
+        Set<VectorStore.ChunkRef> expected = new HashSet<>();
+        for (VectorStore.Hit hit : exact) {
+            expected.add(hit.ref());
+        }
+        int found = 0;
+        for (VectorStore.Hit hit : approx) {
+            if (expected.contains(hit.ref())) found++;
+        }
+        return expected.isEmpty() ? 1.0 : (double) found / expected.size();
+    }
+
+    private interface ShardTask<T> {
+        T run(VectorStore shard);
+    }
+
+    /** Runs {@code task} on every shard, in parallel when there are several; results are in shard order. */
+    private <T> List<T> fanOut(ShardTask<T> task) throws IOException {
+        List<T> results = new ArrayList<>(shards.length);
+        if (shards.length == 1) {
+            results.add(task.run(shards[0]));
+            return results;
+        }
+        List<Callable<T>> calls = new ArrayList<>(shards.length);
+        for (VectorStore shard : shards) {
+            calls.add(() -> task.run(shard));
+        }
+        try {
+            for (Future<T> f : SEARCH_POOL.invokeAll(calls)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching collection " + name, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+    /** Top {@code limit} of several best-first lists, best-first, via a min-heap of at most {@code limit} hits. */
+    private static List<VectorStore.Hit> merge(List<List<VectorStore.Hit>> lists, int limit) {
+        if (lists.size() == 1) {
+            List<VectorStore.Hit> only = lists.get(0);
+            return only.size() > limit ? only.subList(0, limit) : only;
+        }
+        PriorityQueue<VectorStore.Hit> heap = new PriorityQueue<>(Math.max(1, limit),
+                (a, b) -> Float.compare(a.score(), b.score()));
+        for (List<VectorStore.Hit> list : lists) {
+            for (VectorStore.Hit hit : list) {
+                if (heap.size() < limit) {
+                    heap.add(hit);
+                } else if (hit.score() > heap.peek().score()) {
+                    heap.poll();
+                    heap.add(hit);
+                } else {
+                    break; // lists are best-first: the rest of this one cannot enter the heap
+                }
+            }
+        }
+        VectorStore.Hit[] out = new VectorStore.Hit[heap.size()];
+        for (int i = out.length - 1; i >= 0; i--) {
+            out[i] = heap.poll();
+        }
+        return List.of(out);
+    }
+
+    private static long[] analyze(String text) {
+        Set<Long> distinct = new LinkedHashSet<>();
+        LexicalAnalyzer.analyze(text, distinct::add);
+        long[] terms = new long[distinct.size()];
+        int t = 0;
+        for (long term : distinct) terms[t++] = term;
+        return terms;
+    }
+
+    /** IDF per term from document frequencies summed over every shard. */
+    private float[] idf(long[] terms) {
+        long[] docFreq = new long[terms.length];
+        long docCount = 0;
+        for (VectorStore shard : shards) {
+            docCount += shard.addLexicalStats(terms, docFreq);
+        }
+        float[] idf = new float[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            idf[i] = LexicalIndex.idf(Math.max(1, docCount), docFreq[i]);
+        }
+        return idf;
+    }
+
+    /** Reciprocal rank fusion of two best-first rankings. */
+    private static List<Map<String, Object>> fuse(List<VectorStore.Hit> vectorHits, List<VectorStore.Hit> lexicalHits,
+                                                  int rrfK, int topK) {
+        Map<VectorStore.ChunkRef, Fused> fused = new HashMap<>();
+        for (int i = 0; i < vectorHits.size(); i++) {
+            VectorStore.Hit hit = vectorHits.get(i);
+            Fused f = fused.computeIfAbsent(hit.ref(), k -> new Fused());
+            f.score += 1.0 / (rrfK + i + 1);
+            f.vectorScore = hit.score();
+        }
+        for (int i = 0; i < lexicalHits.size(); i++) {
+            VectorStore.Hit hit = lexicalHits.get(i);
+            Fused f = fused.computeIfAbsent(hit.ref(), k -> new Fused());
+            f.score += 1.0 / (rrfK + i + 1);
+            f.lexicalScore = hit.score();
+        }
+        List<Map.Entry<VectorStore.ChunkRef, Fused>> ranked = new ArrayList<>(fused.entrySet());
+        ranked.sort((a, b) -> Double.compare(b.getValue().score, a.getValue().score));
+        List<Map<String, Object>> results = new ArrayList<>(Math.min(topK, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < topK; i++) {
+            VectorStore.ChunkRef ref = ranked.get(i).getKey();
+            Fused f = ranked.get(i).getValue();
+            Map<String, Object> result = toResult(ref.segment().chunk(ref.ord()), (float) f.score);
+            if (!Float.isNaN(f.vectorScore)) result.put("vectorScore", f.vectorScore);
+            if (!Float.isNaN(f.lexicalScore)) result.put("lexicalScore", f.lexicalScore);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static List<Map<String, Object>> toResults(List<VectorStore.Hit> hits) {
+        List<Map<String, Object>> results = new ArrayList<>(hits.size());
+        for (VectorStore.Hit hit : hits) {
+            results.add(toResult(hit.chunk(), hit.score()));
+        }
+        return results;
+    }
+
+    private static Map<String, Object> toResult(StoredChunk chunk, float score) {
+        Map<String, Object> out = new HashMap<>(chunk.metadata());
+        out.put("text", chunk.text());
+        if (chunk.path() != null) out.put("path", chunk.path());
+        if (chunk.chunkIndex() >= 0) out.put("index", chunk.chunkIndex());
+        out.put("score", score);
+        return out;
+    }
+
+    /**
+     * Replaces the manifest with {@code perShard} (the segments of each shard, in shard order), whose files must
+     * already be on disk. The caller forces {@link #dir} once the new list is in use.
+     */
+    private void writeManifest(List<List<VectorStore.LiveSegment>> perShard) throws IOException {
+        List<String> entries = new ArrayList<>();
+        for (int s = 0; s < perShard.size(); s++) {
+            for (VectorStore.LiveSegment live : perShard.get(s)) {
+                String entry = dir.relativize(shards[s].dir().resolve(live.segment().name())).toString().replace('\\', '/');
+                entries.add(live.deletesFile() != null ? entry + " " + live.deletesFile() : entry);
+            }
+        }
+        Manifest.write(manifest, entries);
+    }
+
+    /**
+     * A bulk load across all shards. Chunks are dealt round-robin (continuing where the previous ingestion
+     * stopped, so small loads do not pile onto shard 0). {@link #commit()} stages every shard and then
+     * publishes all of them through one manifest replace; closing without commit, or a commit that fails
+     * before the manifest is replaced, discards every shard's unpublished segments.
+     * <p>
+     * A chunk with a path replaces every stored chunk with the same path and tenant, in whichever shard it was
+     * stored, so a re-ingested document keeps none of its old chunks; the last of several chunks with one
+     * {@link StoredChunk#key() identity} in the same ingestion wins.
+     */
+    final class Ingestion implements Closeable {
+
+        private final List<VectorStore.Ingestion> shardIngestions;
+        private int dimension;
+        /** Tenants of the chunks added so far, by normalized path: the documents this ingestion replaces. */
+        private final Map<String, Set<String>> replaced = new HashMap<>();
+        /** Shard (high 32 bits) and position in the shard's ingestion of the latest chunk per identity. */
+        private final Map<String, Long> latest = new HashMap<>();
+
+        private Ingestion(List<VectorStore.Ingestion> shardIngestions, int dimension) {
+            this.shardIngestions = shardIngestions;
+            this.dimension = dimension;
+        }
+
+        /** Vector dimension of the collection and the chunks added so far, or -1 while both are empty. */
+        int dimension() {
+            return dimension;
+        }
+
+        /** Routes one batch to the shards. */
+        void add(List<float[]> vectors, List<StoredChunk> payloads) throws IOException {
+            if (vectors.size() != payloads.size()) {
+                throw new IllegalArgumentException("vectors and payloads must have the same size");
+            }
+            if (vectors.isEmpty()) {
+                return;
+            }
+            if (dimension < 0) {
+                dimension = vectors.get(0).length;
+            }
+            int n = shardIngestions.size();
+            List<List<float[]>> shardVectors = new ArrayList<>(n);
+            List<List<StoredChunk>> shardPayloads = new ArrayList<>(n);
+            for (int s = 0; s < n; s++) {
+                shardVectors.add(new ArrayList<>());
+                shardPayloads.add(new ArrayList<>());
+            }
+            for (int i = 0; i < vectors.size(); i++) {
+                float[] v = vectors.get(i);
+                if (v.length != dimension) {
+                    throw new IllegalArgumentException("vector dimension " + v.length + " != index dimension " + dimension);
+                }
+                int s = Math.floorMod(nextShard.getAndIncrement(), n);
+                StoredChunk chunk = payloads.get(i);
+                if (chunk.path() != null) {
+                    replaced.computeIfAbsent(FilterIndex.normalizePath(chunk.path()), p -> new HashSet<>()).add(chunk.tenant());
+                }
+                String key = chunk.key();
+                if (key != null) {
+                    long position = shardIngestions.get(s).size() + shardPayloads.get(s).size();
+                    Long previous = latest.put(key, ((long) s << 32) | position);
+                    if (previous != null) {
+                        shardIngestions.get((int) (previous >>> 32)).supersede((int) (long) previous);
+                    }
+                }
+                shardVectors.get(s).add(v);
+                shardPayloads.get(s).add(chunk);
+            }
+            for (int s = 0; s < n; s++) {
+                shardIngestions.get(s).add(shardVectors.get(s), shardPayloads.get(s));
+            }
+        }
+
+        /**
+         * Builds every shard, deletes the chunks this ingestion replaces, lists the resulting segments in the
+         * collection manifest, then publishes them; returns the chunk count. Files the new manifest no longer
+         * lists are removed once it is durable.
+         */
+        int commit() throws IOException {
+            List<List<VectorStore.LiveSegment>> next = new ArrayList<>(shards.length);
+            boolean changed = false;
+            for (VectorStore.Ingestion shard : shardIngestions) {
+                next.add(shard.stage(replaced));
+                changed |= shard.changed();
+            }
+            if (changed) {
+                writeManifest(next);
+            }
+            int stored = 0;
+            for (VectorStore.Ingestion shard : shardIngestions) {
+                stored += shard.publish();
+            }
+            if (changed) {
+                Manifest.forceDirectory(dir);
+                for (VectorStore.Ingestion shard : shardIngestions) {
+                    shard.removeObsolete();
+                }
+            }
+            return stored;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (VectorStore.Ingestion shard : shardIngestions) {
+                try {
+                    shard.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+            if (failure != null) throw failure;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.util.Locale;
+
+/**
+ * Distance kernels behind {@link VectorSimilarity} and the quantized scorers.
+ * <p>
+ * {@link #INSTANCE} is picked once at class load: the {@code jdk.incubator.vector} implementation
+ * ({@link PanamaVectorKernels}) when the worker JVM runs with {@code --add-modules jdk.incubator.vector}
+ * and the CPU has at least 128-bit vectors, otherwise {@link ScalarVectorKernels}.
+ * Set VECTORDB_SIMD=false to force the scalar kernels.
+ */
+interface VectorKernels {
+
+    VectorKernels INSTANCE = load();
+
+    /** Short name of the active implementation ("panama-256", "scalar", ...). */
+    String name();
+
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /** {@code sum(weights[i] * codes[codesOffset + i])} over signed bytes. */
+    float dot(float[] weights, byte[] codes, int codesOffset, int length);
+
+    /** {@code sum((a[i] - scale[i] * codes[codesOffset + i])^2)} over signed bytes. */
+    float squareDistance(float[] a, float[] scale, byte[] codes, int codesOffset, int length);
+
+    private static VectorKernels load() {
+        String simd = System.getenv("VECTORDB_SIMD");
+        if (simd == null || simd.isBlank()) {
+            simd = System.getProperty("VECTORDB_SIMD", "true");
+        }
+        if (!"false".equals(simd.trim().toLowerCase(Locale.ROOT))) {
+            try {
+                return (VectorKernels) Class.forName(VectorKernels.class.getPackageName() + ".PanamaVectorKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (LinkageError | ReflectiveOperationException | RuntimeException e) {
+                // Incubator module not resolved or vectors too narrow: fall through to scalar.
+            }
+        }
+        return new ScalarVectorKernels();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Lossy compression of stored vectors into fixed-size byte codes. Graph traversal scores the float
+ * query against codes (asymmetric distance computation) and the final candidates are reranked with the
+ * exact float vectors, so only the codes need to stay hot in memory.
+ */
+interface VectorQuantizer {
+
+    /** Quantization modes selectable per segment (input "quantization" / env VECTORDB_QUANTIZATION). */
+    enum Mode {
+        NONE, INT8, PQ;
+
+        static Mode parse(String name, Mode defaultValue) {
+            if (name == null || name.isBlank()) return defaultValue;
+            switch (name.trim().toLowerCase(Locale.ROOT)) {
+                case "none": case "float": case "float32": return NONE;
+                case "int8": case "sq": case "scalar": return INT8;
+                case "pq": case "product": return PQ;
+                default: return defaultValue;
+            }
+        }
+    }
+
+    Mode mode();
+
+    /** Bytes per encoded vector. */
+    int codeBytes();
+
+    /** Encodes {@code vector} into {@code dst} starting at {@code offset}. */
+    void encode(float[] vector, byte[] dst, int offset);
+
+    /** Returns a scorer of {@code query} (prepared for {@code similarity}) against {@code codes} (count x codeBytes). */
+    QueryScorer scorer(VectorSimilarity similarity, float[] query, ByteBuffer codes);
+
+    /** Writes the trained parameters (the QUANT_META section body after the mode). */
+    void writeTo(ChannelOutput out) throws IOException;
+
+    /** Trains a quantizer of the given mode on {@code vectors}; returns null for {@link Mode#NONE}. */
+    static VectorQuantizer train(Mode mode, VectorValues vectors, int pqSubspaces) {
+        switch (mode) {
+            case INT8: return ScalarQuantizer.train(vectors);
+            case PQ: return ProductQuantizer.train(vectors, pqSubspaces);
+            default: return null;
+        }
+    }
+
+    /** Reads a quantizer from a QUANT_META section. */
+    static VectorQuantizer read(ByteBuffer meta) throws IOException {
+        int mode = meta.getInt();
+        if (mode == Mode.INT8.ordinal()) return ScalarQuantizer.read(meta);
+        if (mode == Mode.PQ.ordinal()) return ProductQuantizer.read(meta);
+        throw new IOException("Unknown quantization mode " + mode);
+    }
+}
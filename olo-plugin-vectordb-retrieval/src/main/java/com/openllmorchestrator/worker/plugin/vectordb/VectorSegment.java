@@ -0,0 +1,316 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, memory-mapped vector segment. A segment is written once by {@link SegmentWriter} and
+ * never modified; the store grows by appending new segments.
+ * <p>
+ * File layout (little-endian):
+ * <pre>
+ * header      magic "OLOV", version, dimension, count, similarity, M, entryPoint, maxLevel, sectionCount
+ * sections    sectionCount x (id int, reserved int, offset long, length long)
+ * VECTORS     count x dimension float32 (64-byte aligned)
+ * GRAPH_L0    count x (2M + 1) int32: neighbor count then neighbor ordinals
+ * GRAPH_UPPER per node with level &gt; 0: node, level, level x (M + 1) int32
+ * PAYLOADS    per chunk: chunkIndex, text, path, metadata pairs (length-prefixed UTF-8)
+ * PAYLOAD_OFFSETS (count + 1) int64 offsets into PAYLOADS
+ * QUANT_META  optional: quantizer mode and trained parameters
+ * QUANT_CODES optional: count x codeBytes quantized codes
+ * LEX_*       optional: BM25 inverted index over the chunk text (see {@link LexicalIndex})
+ * FILTER      optional: metadata postings for filtered search (see {@link FilterIndex})
+ * </pre>
+ * Vectors and level-0 links are read through the mapping in place; nothing is copied onto the heap
+ * except the sparse upper graph levels. With quantization, graph traversal only touches the (4-16x
+ * smaller) codes and the float vectors are read for the final rerank only.
+ */
+final class VectorSegment {
+
+    static final int MAGIC = 0x564F4C4F; // "OLOV" little-endian
+    static final int VERSION = 1;
+    static final int HEADER_INTS = 9;
+    static final int SECTION_ENTRY_BYTES = 24;
+
+    static final int SECTION_VECTORS = 1;
+    static final int SECTION_GRAPH_L0 = 2;
+    static final int SECTION_GRAPH_UPPER = 3;
+    static final int SECTION_PAYLOADS = 4;
+    static final int SECTION_PAYLOAD_OFFSETS = 5;
+    static final int SECTION_QUANT_META = 6;
+    static final int SECTION_QUANT_CODES = 7;
+    static final int SECTION_LEX_TERMS = 8;
+    static final int SECTION_LEX_POSTINGS = 9;
+    static final int SECTION_LEX_LENGTHS = 10;
+    static final int SECTION_LEX_SKIPS = 11;
+    static final int SECTION_FILTER = 12;
+
+    private final String name;
+    private final int dimension;
+    private final int size;
+    private final VectorSimilarity similarity;
+    private final MappedFloatVectors vectors;
+    private final HnswIndex graph;
+    private final ByteBuffer payloads;
+    private final LongBuffer payloadOffsets;
+    private final VectorQuantizer quantizer;
+    private final ByteBuffer codes;
+    private final LexicalIndex lexical;
+    private final ByteBuffer filterSection;
+    private volatile FilterIndex filter;
+
+    private VectorSegment(String name, int dimension, int size, VectorSimilarity similarity, MappedFloatVectors vectors,
+                          HnswIndex graph, ByteBuffer payloads, LongBuffer payloadOffsets,
+                          VectorQuantizer quantizer, ByteBuffer codes, LexicalIndex lexical, ByteBuffer filterSection) {
+        this.name = name;
+        this.dimension = dimension;
+        this.size = size;
+        this.similarity = similarity;
+        this.vectors = vectors;
+        this.graph = graph;
+        this.payloads = payloads;
+        this.payloadOffsets = payloadOffsets;
+        this.quantizer = quantizer;
+        this.codes = codes;
+        this.lexical = lexical;
+        this.filterSection = filterSection;
+    }
+
+    /** Maps a segment file read-only. Cost is proportional to the upper graph levels only, not the vector count. */
+    static VectorSegment open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        ByteBuffer buf = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < HEADER_INTS * Integer.BYTES || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a vector segment: " + file);
+        }
+        int version = buf.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported segment version " + version + ": " + file);
+        }
+        int dimension = buf.getInt(8);
+        int count = buf.getInt(12);
+        VectorSimilarity similarity = VectorSimilarity.values()[buf.getInt(16)];
+        int m = buf.getInt(20);
+        int entryPoint = buf.getInt(24);
+        int maxLevel = buf.getInt(28);
+        int sectionCount = buf.getInt(32);
+
+        Map<Integer, ByteBuffer> sections = new HashMap<>();
+        int pos = HEADER_INTS * Integer.BYTES;
+        for (int i = 0; i < sectionCount; i++, pos += SECTION_ENTRY_BYTES) {
+            int id = buf.getInt(pos);
+            long offset = buf.getLong(pos + 8);
+            long length = buf.getLong(pos + 16);
+            if (offset < 0 || length < 0 || offset + length > buf.limit()) {
+                throw new IOException("Corrupt section table in " + file);
+            }
+            sections.put(id, buf.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN));
+        }
+
+        MappedFloatVectors vectors = new MappedFloatVectors(
+                section(sections, SECTION_VECTORS, file).asFloatBuffer(), dimension, count);
+        HnswIndex graph = HnswIndex.load(vectors, similarity, m, entryPoint, maxLevel,
+                section(sections, SECTION_GRAPH_L0, file), section(sections, SECTION_GRAPH_UPPER, file));
+        VectorQuantizer quantizer = null;
+        ByteBuffer codes = null;
+        if (sections.containsKey(SECTION_QUANT_META)) {
+            quantizer = VectorQuantizer.read(sections.get(SECTION_QUANT_META));
+            codes = section(sections, SECTION_QUANT_CODES, file);
+        }
+        LexicalIndex lexical = null;
+        if (sections.containsKey(SECTION_LEX_TERMS)) {
+            lexical = LexicalIndex.load(sections.get(SECTION_LEX_TERMS), section(sections, SECTION_LEX_POSTINGS, file),
+                    section(sections, SECTION_LEX_SKIPS, file), section(sections, SECTION_LEX_LENGTHS, file));
+        }
+        return new VectorSegment(file.getFileName().toString(), dimension, count, similarity, vectors, graph,
+                section(sections, SECTION_PAYLOADS, file), section(sections, SECTION_PAYLOAD_OFFSETS, file).asLongBuffer(),
+                quantizer, codes, lexical, sections.get(SECTION_FILTER));
+    }
+
+    private static ByteBuffer section(Map<Integer, ByteBuffer> sections, int id, Path file) throws IOException {
+        ByteBuffer b = sections.get(id);
+        if (b == null) {
+            throw new IOException("Missing section " + id + " in " + file);
+        }
+        return b;
+    }
+
+    String name() {
+        return name;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int size() {
+        return size;
+    }
+
+    VectorSimilarity similarity() {
+        return similarity;
+    }
+
+    VectorValues vectors() {
+        return vectors;
+    }
+
+    VectorQuantizer.Mode quantization() {
+        return quantizer != null ? quantizer.mode() : VectorQuantizer.Mode.NONE;
+    }
+
+    /**
+     * Top-k ordinals in this segment as a min-queue, scored with exact similarity.
+     * For quantized segments the graph is traversed on codes for {@code topK * rerankFactor} candidates,
+     * which are then rescored against the float vectors.
+     * {@code query} must be prepared for {@link #similarity()}.
+     */
+    NeighborQueue search(float[] query, int topK, int efSearch, int rerankFactor) {
+        return search(query, topK, efSearch, rerankFactor, null);
+    }
+
+    /**
+     * Filtered variant of {@link #search(float[], int, int, int)}: only ordinals in {@code accept} are returned.
+     * Small filters (at most {@code ef * M} ordinals, about what a graph search would score anyway) are
+     * scanned exactly; larger ones are searched in the graph, falling back to the scan if the traversal
+     * scores more nodes than the filter holds.
+     *
+     * @param accept ordinals that may be returned, or null for all
+     */
+    NeighborQueue search(float[] query, int topK, int efSearch, int rerankFactor, DocIdBitmap accept) {
+        if (accept != null) {
+            if (accept.cardinality() == 0) {
+                return new NeighborQueue(1, false);
+            }
+            if (accept.cardinality() <= (long) Math.max(topK, efSearch) * graph.m()) {
+                return exactSearch(query, topK, accept);
+            }
+        }
+        int visitLimit = accept != null ? accept.cardinality() : Integer.MAX_VALUE;
+        if (quantizer == null) {
+            NeighborQueue found = graph.search(ord -> vectors.score(similarity, query, ord), topK, efSearch, accept, visitLimit);
+            return found != null ? found : exactSearch(query, topK, accept);
+        }
+        int candidates = topK * Math.max(1, rerankFactor);
+        NeighborQueue approx = graph.search(quantizer.scorer(similarity, query, codes), candidates,
+                Math.max(efSearch, candidates), accept, visitLimit);
+        if (approx == null) {
+            return exactSearch(query, topK, accept);
+        }
+        NeighborQueue exact = new NeighborQueue(topK, false);
+        while (!approx.isEmpty()) {
+            int ord = approx.pop();
+            exact.insertWithOverflow(ord, vectors.score(similarity, query, ord), topK);
+        }
+        return exact;
+    }
+
+    /** BM25 index over this segment's chunk text, or null for segments written without one. */
+    LexicalIndex lexical() {
+        return lexical;
+    }
+
+    /**
+     * Metadata postings of this segment. Segments written without a FILTER section index path, extension
+     * and every metadata key from their payloads on first use.
+     */
+    FilterIndex filter() {
+        FilterIndex f = filter;
+        if (f == null) {
+            synchronized (this) {
+                f = filter;
+                if (f == null) {
+                    f = filterSection != null ? FilterIndex.read(filterSection) : FilterIndex.build(chunks(), null);
+                    filter = f;
+                }
+            }
+        }
+        return f;
+    }
+
+    /** Exact top-k by scanning every vector; used to measure recall of {@link #search}. */
+    NeighborQueue exactSearch(float[] query, int topK) {
+        return exactSearch(query, topK, null);
+    }
+
+    /** Exact top-k over the ordinals in {@code accept} (all when null). */
+    NeighborQueue exactSearch(float[] query, int topK, DocIdBitmap accept) {
+        NeighborQueue exact = new NeighborQueue(topK, false);
+        if (accept == null) {
+            for (int ord = 0; ord < size; ord++) {
+                exact.insertWithOverflow(ord, vectors.score(similarity, query, ord), topK);
+            }
+        } else {
+            for (int ord : accept.toArray()) {
+                exact.insertWithOverflow(ord, vectors.score(similarity, query, ord), topK);
+            }
+        }
+        return exact;
+    }
+
+    private List<StoredChunk> chunks() {
+        List<StoredChunk> chunks = new ArrayList<>(size);
+        for (int ord = 0; ord < size; ord++) {
+            chunks.add(chunk(ord));
+        }
+        return chunks;
+    }
+
+    /** Decodes the payload of chunk {@code ord} (only called for hits, so decoding cost is per result). */
+    StoredChunk chunk(int ord) {
+        ByteBuffer in = payloads.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        in.position((int) payloadOffsets.get(ord));
+        int chunkIndex = in.getInt();
+        String text = readString(in);
+        String path = readString(in);
+        int metaCount = in.getInt();
+        Map<String, String> metadata = new HashMap<>();
+        for (int i = 0; i < metaCount; i++) {
+            String key = readString(in);
+            String value = readString(in);
+            if (key != null && value != null) {
+                metadata.put(key, value);
+            }
+        }
+        return new StoredChunk(text, path, chunkIndex, metadata);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
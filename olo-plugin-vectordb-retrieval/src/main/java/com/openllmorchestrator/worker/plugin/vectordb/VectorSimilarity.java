@@ -0,0 +1,83 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.util.Locale;
+
+/**
+ * Similarity functions for the vector index. All scores are "higher is more similar" so the
+ * graph search never has to care which metric is configured.
+ * Cosine vectors are normalized once on insert / query and then scored as dot product.
+ * The arithmetic runs on {@link VectorKernels#INSTANCE} (SIMD when available).
+ */
+enum VectorSimilarity {
+    COSINE,
+    DOT_PRODUCT,
+    EUCLIDEAN;
+
+    float score(float[] a, float[] b) {
+        return score(a, 0, b, 0, a.length);
+    }
+
+    /** Scores {@code length} components of {@code a} starting at {@code aOffset} against {@code b} at {@code bOffset}. */
+    float score(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        if (this == EUCLIDEAN) {
+            return -squareDistance(a, aOffset, b, bOffset, length);
+        }
+        return dot(a, aOffset, b, bOffset, length);
+    }
+
+    /** Returns the vector to store / search with (a normalized copy for cosine, otherwise {@code v}). */
+    float[] prepare(float[] v) {
+        if (this != COSINE) {
+            return v;
+        }
+        float[] out = v.clone();
+        normalize(out);
+        return out;
+    }
+
+    static VectorSimilarity parse(String name, VectorSimilarity defaultValue) {
+        if (name == null || name.isBlank()) return defaultValue;
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "cosine": return COSINE;
+            case "dot": case "dot_product": case "dotproduct": return DOT_PRODUCT;
+            case "l2": case "euclidean": return EUCLIDEAN;
+            default: return defaultValue;
+        }
+    }
+
+    static float dot(float[] a, float[] b) {
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return VectorKernels.INSTANCE.dot(a, aOffset, b, bOffset, length);
+    }
+
+    static float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return VectorKernels.INSTANCE.squareDistance(a, aOffset, b, bOffset, length);
+    }
+
+    static void normalize(float[] v) {
+        float norm = (float) Math.sqrt(dot(v, v));
+        if (norm > 0f) {
+            for (int i = 0; i < v.length; i++) {
+                v[i] /= norm;
+            }
+        }
+    }
+}
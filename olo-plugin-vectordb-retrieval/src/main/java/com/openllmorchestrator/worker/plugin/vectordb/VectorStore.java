@@ -0,0 +1,723 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * Persistent vector store: a list of immutable, memory-mapped {@link VectorSegment}s in one directory.
+ * <p>
+ * Each {@link #ingest} builds HNSW graphs for its batches on the heap, writes them as new segment files and
+ * maps them back; the heap copies are then dropped. The live segment list is recorded in the owning
+ * {@link VectorCollection}'s manifest, which lists every shard, so a restarted worker only maps the listed
+ * files instead of re-ingesting. Files not in the manifest (e.g. left by a crash) are removed on open.
+ * Each segment carries an HNSW graph over the vectors and a BM25 inverted index over the chunk text.
+ * <p>
+ * Re-ingesting a document replaces it: an ingestion deletes every stored chunk with the same path and tenant as
+ * a chunk it adds, so a document that now yields fewer chunks leaves none behind. Segments are never rewritten
+ * in place; deleted ordinals are kept as a bitmap in a {@code .del} file named next to the segment in the
+ * manifest and excluded from every search. A segment whose chunks are all deleted leaves the manifest, and segments that
+ * are at least {@value #COMPACT_DELETED_PERCENT}% deleted are merged into a new segment holding only their live
+ * chunks, so repeated re-ingestion neither returns duplicates nor grows the store without bound.
+ * <p>
+ * Every commit adds at least one segment, and a search visits every segment, so commits also merge segments
+ * by size tier ({@link IndexSettings#mergeFactor()}): the segment count grows with the logarithm of the
+ * store size instead of with the number of commits, and query latency stays flat under a sustained insert load.
+ * <p>
+ * Writers are serialized. Readers never lock: the published segment list is an immutable snapshot that a
+ * commit replaces with a single volatile write, so queries are never stalled by an ingestion, and a query
+ * that started on the old list finishes on it (its segments stay mapped while referenced).
+ * <p>
+ * A store is one shard of a {@link VectorCollection}, which merges rankings across shards; searches here
+ * return raw {@link Hit}s.
+ */
+final class VectorStore {
+
+    static final int COMPACT_DELETED_PERCENT = 50;
+    /** Live chunks below which segments share the lowest merge tier. */
+    static final int MERGE_FLOOR_CHUNKS = 1000;
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".vseg";
+    private static final String DELETES_SUFFIX = ".del";
+
+    /** One search hit before payload decoding. Segments are never unmapped, so hits stay valid after the search. */
+    record Hit(VectorSegment segment, int ord, float score) {
+        ChunkRef ref() {
+            return new ChunkRef(segment, ord);
+        }
+
+        StoredChunk chunk() {
+            return segment.chunk(ord);
+        }
+    }
+
+    /** Identity of a stored chunk across rankings. */
+    record ChunkRef(VectorSegment segment, int ord) {}
+
+    /**
+     * A published segment with its deleted ordinals. {@code deleted}, {@code live} (its complement, the accept
+     * set for searches) and {@code deletesFile} are null when nothing is deleted.
+     */
+    record LiveSegment(VectorSegment segment, DocIdBitmap deleted, DocIdBitmap live, String deletesFile) {
+
+        static LiveSegment of(VectorSegment segment) {
+            return new LiveSegment(segment, null, null, null);
+        }
+
+        static LiveSegment of(VectorSegment segment, DocIdBitmap deleted, String deletesFile) {
+            return new LiveSegment(segment, deleted, deleted.complement(segment.size()), deletesFile);
+        }
+
+        boolean isDeleted(int ord) {
+            return deleted != null && deleted.contains(ord);
+        }
+
+        int liveCount() {
+            return live != null ? live.cardinality() : segment.size();
+        }
+    }
+
+    private final Path dir;
+    /** Serializes ingestions (segment ids, dimension checks); held from {@link #ingest} until the ingestion closes. */
+    private final ReentrantLock writerLock = new ReentrantLock();
+    /** Published segments; immutable, replaced on commit (copy-on-write). */
+    private volatile List<LiveSegment> segments;
+    private long nextSegmentId;
+
+    private VectorStore(Path dir, List<LiveSegment> segments, long nextSegmentId) {
+        this.dir = dir;
+        this.segments = segments;
+        this.nextSegmentId = nextSegmentId;
+    }
+
+    /**
+     * Opens the shard in {@code dir} with the files named in {@code live} (from the collection manifest: a segment,
+     * optionally followed by a space and its deletes file) and deletes every other segment or deletes file there,
+     * i.e. ones an ingestion wrote but never published. The caller holds the collection's directory lock, so these
+     * cannot belong to another process. A listed file that cannot be read fails the open before anything is deleted.
+     */
+    static VectorStore open(Path dir, List<String> live) throws IOException {
+        Files.createDirectories(dir);
+        List<LiveSegment> loaded = new ArrayList<>(live.size());
+        Set<String> listed = new HashSet<>();
+        long nextId = 1;
+        for (String entry : live) {
+            String[] names = entry.split(" ");
+            VectorSegment segment = VectorSegment.open(dir.resolve(names[0]));
+            loaded.add(names.length > 1
+                    ? LiveSegment.of(segment, readDeletes(dir.resolve(names[1]), segment.size()), names[1])
+                    : LiveSegment.of(segment));
+            for (String name : names) {
+                listed.add(name);
+                nextId = Math.max(nextId, fileId(name) + 1);
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*")) {
+            for (Path f : files) {
+                if (!listed.contains(f.getFileName().toString())) {
+                    Files.deleteIfExists(f);
+                }
+            }
+        }
+        return new VectorStore(dir, List.copyOf(loaded), nextId);
+    }
+
+    /**
+     * Starts a bulk load. Only one ingestion runs at a time; searches keep running against the published
+     * segments while it builds and switch to the new segment list when {@link Ingestion#publish()} installs it.
+     * Similarity of existing segments wins over {@code settings.similarity()}.
+     */
+    Ingestion ingest(IndexSettings settings) throws IOException {
+        writerLock.lock();
+        try {
+            List<LiveSegment> current = segments;
+            return current.isEmpty()
+                    ? new Ingestion(settings, settings.similarity(), -1)
+                    : new Ingestion(settings, current.get(0).segment().similarity(), current.get(0).segment().dimension());
+        } catch (RuntimeException e) {
+            writerLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Up to {@code topK} vector hits best-first. Quantized segments gather {@code topK * rerankFactor} candidates
+     * and rerank them on the float vectors. A {@link MetadataFilter} is resolved to a bitmap per segment and
+     * applied inside each search, so filtered queries still return {@code topK} matches when that many exist.
+     *
+     * @param query unprepared query vector
+     * @throws IllegalArgumentException on dimension mismatch or a filter on a field that is not indexed
+     */
+    List<Hit> vectorHits(float[] query, int topK, int efSearch, int rerankFactor, MetadataFilter filter) {
+        List<LiveSegment> snapshot = snapshot();
+        if (snapshot.isEmpty() || topK <= 0) {
+            return new ArrayList<>();
+        }
+        float[] prepared = prepare(snapshot, query);
+        DocIdBitmap[] accept = accept(snapshot, filter);
+        return top(collect(snapshot, accept, (segment, bits) -> segment.search(prepared, topK, efSearch, rerankFactor, bits)), topK);
+    }
+
+    /** Exact top-k by scanning every (matching) vector; the reference for recall measurements. */
+    List<Hit> exactHits(float[] query, int topK, MetadataFilter filter) {
+        List<LiveSegment> snapshot = snapshot();
+        if (snapshot.isEmpty() || topK <= 0) {
+            return new ArrayList<>();
+        }
+        float[] prepared = prepare(snapshot, query);
+        DocIdBitmap[] accept = accept(snapshot, filter);
+        return top(collect(snapshot, accept, (segment, bits) -> segment.exactSearch(prepared, topK, bits)), topK);
+    }
+
+    /**
+     * Adds the document frequency of each of {@code terms} over the segments with a lexical index to
+     * {@code docFreq}; returns the number of chunks in those segments. Callers sum this over all stores
+     * searched together so IDF is the same everywhere. Deleted chunks still count until their segment is
+     * compacted.
+     */
+    long addLexicalStats(long[] terms, long[] docFreq) {
+        long docCount = 0;
+        for (LiveSegment live : snapshot()) {
+            LexicalIndex lexical = live.segment().lexical();
+            if (lexical == null) continue;
+            docCount += live.segment().size();
+            for (int i = 0; i < terms.length; i++) {
+                docFreq[i] += lexical.docFreq(terms[i]);
+            }
+        }
+        return docCount;
+    }
+
+    /** Up to {@code limit} BM25 hits best-first over the segments with a lexical index, using the given IDF. */
+    List<Hit> lexicalHits(long[] terms, float[] idf, int limit, MetadataFilter filter) {
+        List<LiveSegment> snapshot = snapshot();
+        if (snapshot.isEmpty() || terms.length == 0 || limit <= 0) {
+            return new ArrayList<>();
+        }
+        DocIdBitmap[] accept = accept(snapshot, filter);
+        return top(collect(snapshot, accept, (segment, bits) -> segment.lexical() != null
+                ? segment.lexical().search(terms, idf, limit, bits)
+                : new NeighborQueue(1, false)), limit);
+    }
+
+    /** Similarity of the stored segments, or null while the store is empty. */
+    VectorSimilarity similarity() {
+        List<LiveSegment> snapshot = snapshot();
+        return snapshot.isEmpty() ? null : snapshot.get(0).segment().similarity();
+    }
+
+    /** Vector dimension of the stored segments, or -1 while the store is empty. */
+    int dimension() {
+        List<LiveSegment> snapshot = snapshot();
+        return snapshot.isEmpty() ? -1 : snapshot.get(0).segment().dimension();
+    }
+
+    /** Number of live (not deleted) chunks. */
+    int size() {
+        int n = 0;
+        for (LiveSegment s : snapshot()) {
+            n += s.liveCount();
+        }
+        return n;
+    }
+
+    /**
+     * The published segments. The list is immutable and replaced as a whole on commit, so a reader works on one
+     * consistent snapshot without locking; segments it holds stay mapped for as long as it references them.
+     */
+    private List<LiveSegment> snapshot() {
+        return segments;
+    }
+
+    Path dir() {
+        return dir;
+    }
+
+    /**
+     * A bulk load in progress. Batches are staged on the heap and built into a segment (HNSW graph linked on
+     * {@link IndexSettings#buildThreads()} threads) each time {@link IndexSettings#maxSegmentChunks()} chunks
+     * are staged, or earlier when the next chunk would take the estimated file size
+     * ({@link SegmentWriter#estimateBytes}) past {@link SegmentWriter#MAX_SEGMENT_BYTES}. Segment files are
+     * written but stay out of the manifest until the collection has {@link #stage staged} every shard and
+     * listed them all in one atomic manifest replace, so readers see either none or all of the ingested
+     * chunks, and either none or all of the chunks they replace. Closing without {@link #publish} deletes the
+     * written files.
+     */
+    final class Ingestion implements Closeable {
+
+        private final IndexSettings settings;
+        private final VectorSimilarity similarity;
+        private int dimension;
+        private PagedFloatVectors staged;
+        private final List<StoredChunk> stagedPayloads = new ArrayList<>();
+        private long stagedPayloadBytes;
+        /** Files written by this ingestion; deleted on close unless published. */
+        private final List<Path> written = new ArrayList<>();
+        /** Published files the staged list no longer references; deleted once it is durable. */
+        private final List<Path> obsolete = new ArrayList<>();
+        /** Positions (in add order) of chunks a later chunk with the same identity replaces. */
+        private int[] superseded = new int[0];
+        private int supersededCount;
+        private List<LiveSegment> next;
+        private int count;
+        private boolean closed;
+
+        private Ingestion(IndexSettings settings, VectorSimilarity similarity, int dimension) {
+            this.settings = settings;
+            this.similarity = similarity;
+            this.dimension = dimension;
+        }
+
+        /** Number of chunks added so far; the next chunk added gets this position. */
+        int size() {
+            return count + (staged != null ? staged.size() : 0);
+        }
+
+        /** Stages one batch, building a segment whenever the staged chunks reach the segment limits. */
+        void add(List<float[]> vectors, List<StoredChunk> payloads) throws IOException {
+            if (closed) {
+                throw new IllegalStateException("ingestion already closed");
+            }
+            if (vectors.size() != payloads.size()) {
+                throw new IllegalArgumentException("vectors and payloads must have the same size");
+            }
+            if (vectors.isEmpty()) {
+                return;
+            }
+            if (dimension < 0) {
+                dimension = vectors.get(0).length;
+            }
+            for (float[] v : vectors) {
+                if (v.length != dimension) {
+                    throw new IllegalArgumentException("vector dimension " + v.length + " != index dimension " + dimension);
+                }
+            }
+            for (int i = 0; i < vectors.size(); i++) {
+                long payloadBytes = SegmentWriter.payloadBytes(payloads.get(i));
+                if (staged != null && full(staged.size() + 1, stagedPayloadBytes + payloadBytes)) {
+                    flush();
+                }
+                if (staged == null) {
+                    staged = new PagedFloatVectors(dimension);
+                }
+                staged.add(similarity.prepare(vectors.get(i)));
+                stagedPayloads.add(payloads.get(i));
+                stagedPayloadBytes += payloadBytes;
+            }
+        }
+
+        /** Marks the chunk added at {@code position} as replaced by a later one of this ingestion. */
+        void supersede(int position) {
+            if (supersededCount == superseded.length) {
+                superseded = Arrays.copyOf(superseded, Math.max(16, supersededCount * 2));
+            }
+            superseded[supersededCount++] = position;
+        }
+
+        /**
+         * Builds any staged chunks and computes the shard's next segment list: the published segments with the
+         * chunks in {@code replaced} deleted, then this ingestion's segments, with segments that end up mostly
+         * deleted compacted and full size tiers merged. New files are on disk with their directory entries forced; searches do not see the
+         * list until {@link #publish()}.
+         *
+         * @param replaced tenants of the chunks this collection ingestion adds, by normalized path
+         */
+        List<LiveSegment> stage(Map<String, Set<String>> replaced) throws IOException {
+            if (closed) {
+                throw new IllegalStateException("ingestion already closed");
+            }
+            flush();
+            List<Path> ingested = List.copyOf(written);
+            List<LiveSegment> result = new ArrayList<>();
+            for (LiveSegment published : segments) {
+                LiveSegment kept = delete(published, replacedOrds(published, replaced));
+                if (kept != null) result.add(kept);
+            }
+            DocIdBitmap supersededOrds = DocIdBitmap.of(superseded, supersededCount);
+            int base = 0;
+            for (Path file : ingested) {
+                VectorSegment segment = VectorSegment.open(file);
+                List<Integer> own = new ArrayList<>();
+                for (int position : supersededOrds.toArray()) {
+                    if (position >= base && position < base + segment.size()) own.add(position - base);
+                }
+                LiveSegment kept = delete(LiveSegment.of(segment), toBitmap(own));
+                if (kept != null) result.add(kept);
+                base += segment.size();
+            }
+            compact(result);
+            mergeTiers(result);
+            if (!written.isEmpty()) {
+                Manifest.forceDirectory(dir);
+            }
+            next = List.copyOf(result);
+            return next;
+        }
+
+        /** Whether {@link #stage} produced a list that differs from the published one. */
+        boolean changed() {
+            return next != null && !next.equals(segments);
+        }
+
+        /**
+         * Installs the staged list and ends the ingestion. Called once the collection manifest lists it; returns the
+         * number of chunks added.
+         */
+        int publish() throws IOException {
+            if (closed) {
+                throw new IllegalStateException("ingestion already closed");
+            }
+            if (next != null) {
+                segments = next;
+            }
+            written.clear();
+            close();
+            return count;
+        }
+
+        /**
+         * Deletes the files the published list replaced. Called after the manifest naming the new list is
+         * durable; failures (e.g. a file still mapped on Windows) leave the file for the next open to remove.
+         */
+        void removeObsolete() {
+            for (Path file : obsolete) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // removed as an unlisted file on the next open
+                }
+            }
+            obsolete.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                for (Path file : written) {
+                    Files.deleteIfExists(file);
+                }
+            } finally {
+                writerLock.unlock();
+            }
+        }
+
+        /** Whether a segment of {@code size} chunks with {@code payloadBytes} of payload passes a segment limit. */
+        private boolean full(int size, long payloadBytes) {
+            return size > settings.maxSegmentChunks()
+                    || SegmentWriter.estimateBytes(dimension, settings.m(), size, payloadBytes, settings.quantization())
+                    > SegmentWriter.MAX_SEGMENT_BYTES;
+        }
+
+        private void flush() throws IOException {
+            if (staged == null || staged.size() == 0) {
+                return;
+            }
+            writeSegment(staged, stagedPayloads);
+            count += staged.size();
+            staged = null;
+            stagedPayloads.clear();
+            stagedPayloadBytes = 0;
+        }
+
+        /** Builds the graph and quantizer for {@code vectors} (already prepared) and writes them as a new segment file. */
+        private Path writeSegment(PagedFloatVectors vectors, List<StoredChunk> payloads) throws IOException {
+            HnswIndex graph = new HnswIndex(vectors, similarity, settings.m(), settings.efConstruction());
+            graph.addAll(settings.buildThreads());
+            VectorQuantizer quantizer = VectorQuantizer.train(settings.quantization(), vectors, settings.pqSubspaces());
+            Path file = dir.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, nextSegmentId++, SEGMENT_SUFFIX));
+            written.add(file);
+            SegmentWriter.write(file, vectors, graph, payloads, quantizer, settings.filterFields());
+            return file;
+        }
+
+        /** Live ordinals of {@code segment} whose (path, tenant) is in {@code replaced}, found through the path postings. */
+        private DocIdBitmap replacedOrds(LiveSegment segment, Map<String, Set<String>> replaced) {
+            if (replaced.isEmpty()) {
+                return DocIdBitmap.EMPTY;
+            }
+            List<Integer> ords = new ArrayList<>();
+            FilterIndex filter = segment.segment().filter();
+            for (Map.Entry<String, Set<String>> path : replaced.entrySet()) {
+                for (int ord : filter.exact(FilterIndex.PATH, path.getKey()).toArray()) {
+                    if (!segment.isDeleted(ord) && path.getValue().contains(segment.segment().chunk(ord).tenant())) {
+                        ords.add(ord);
+                    }
+                }
+            }
+            return toBitmap(ords);
+        }
+
+        /**
+         * {@code segment} with {@code ords} deleted as well: unchanged when there are none, null when nothing would
+         * be left. Otherwise the combined deletes are written to a new file.
+         */
+        private LiveSegment delete(LiveSegment segment, DocIdBitmap ords) throws IOException {
+            if (ords.cardinality() == 0) {
+                return segment;
+            }
+            DocIdBitmap deleted = segment.deleted() != null ? segment.deleted().or(ords) : ords;
+            if (segment.deletesFile() != null) {
+                obsolete.add(dir.resolve(segment.deletesFile()));
+            }
+            if (deleted.cardinality() >= segment.segment().size()) {
+                obsolete.add(dir.resolve(segment.segment().name()));
+                return null;
+            }
+            String name = String.format("%s%010d%s", SEGMENT_PREFIX, nextSegmentId++, DELETES_SUFFIX);
+            written.add(dir.resolve(name));
+            writeDeletes(dir.resolve(name), deleted);
+            return LiveSegment.of(segment.segment(), deleted, name);
+        }
+
+        /**
+         * Replaces the segments of {@code list} that are at least {@value #COMPACT_DELETED_PERCENT}% deleted with new
+         * segments of their live chunks, rolling over at the same limits as an ingestion.
+         */
+        private void compact(List<LiveSegment> list) throws IOException {
+            List<LiveSegment> inputs = new ArrayList<>();
+            for (LiveSegment s : list) {
+                if (s.deleted() != null && s.deleted().cardinality() * 100L >= (long) s.segment().size() * COMPACT_DELETED_PERCENT) {
+                    inputs.add(s);
+                }
+            }
+            if (!inputs.isEmpty()) {
+                list.removeAll(inputs);
+                list.addAll(merge(inputs));
+            }
+        }
+
+        /**
+         * Size-tiered merging. A segment's tier is 0 below {@value #MERGE_FLOOR_CHUNKS} live chunks and grows by one
+         * each time the count passes another factor of {@link IndexSettings#mergeFactor()}. While a tier holds that
+         * many segments, its smallest ones are merged into one, as long as the result fits within the segment
+         * limits; each tier therefore keeps fewer than {@code mergeFactor} segments, and a chunk is rewritten about
+         * once per tier it climbs.
+         */
+        private void mergeTiers(List<LiveSegment> list) throws IOException {
+            int factor = settings.mergeFactor();
+            if (factor < 2) {
+                return;
+            }
+            while (true) {
+                Map<Integer, List<LiveSegment>> tiers = new TreeMap<>();
+                for (LiveSegment s : list) {
+                    tiers.computeIfAbsent(tier(s.liveCount(), factor), t -> new ArrayList<>()).add(s);
+                }
+                List<LiveSegment> inputs = null;
+                for (List<LiveSegment> tier : tiers.values()) {
+                    if (tier.size() < factor) continue;
+                    tier.sort(Comparator.comparingInt(LiveSegment::liveCount));
+                    List<LiveSegment> smallest = tier.subList(0, factor);
+                    if (fitsOneSegment(smallest)) {
+                        inputs = new ArrayList<>(smallest);
+                        break;
+                    }
+                }
+                if (inputs == null) {
+                    return;
+                }
+                list.removeAll(inputs);
+                List<LiveSegment> merged = merge(inputs);
+                list.addAll(merged);
+                if (merged.size() > 1) {
+                    return; // the size estimate was off; merging these again would not shrink the list
+                }
+            }
+        }
+
+        /** Whether the live chunks of {@code inputs} stay under the segment limits, judged by their file sizes. */
+        private boolean fitsOneSegment(List<LiveSegment> inputs) throws IOException {
+            long chunks = 0;
+            long bytes = 0;
+            for (LiveSegment s : inputs) {
+                chunks += s.liveCount();
+                bytes += Files.size(dir.resolve(s.segment().name()));
+            }
+            return chunks <= settings.maxSegmentChunks() && bytes <= SegmentWriter.MAX_SEGMENT_BYTES / 2;
+        }
+
+        /** Writes the live chunks of {@code inputs} into new segments and marks the inputs' files obsolete. */
+        private List<LiveSegment> merge(List<LiveSegment> inputs) throws IOException {
+            List<LiveSegment> merged = new ArrayList<>();
+            int dim = inputs.get(0).segment().dimension();
+            float[] scratch = new float[dim];
+            PagedFloatVectors vectors = new PagedFloatVectors(dim);
+            List<StoredChunk> payloads = new ArrayList<>();
+            long payloadBytes = 0;
+            for (LiveSegment input : inputs) {
+                VectorSegment segment = input.segment();
+                for (int ord = 0; ord < segment.size(); ord++) {
+                    if (input.isDeleted(ord)) continue;
+                    StoredChunk chunk = segment.chunk(ord);
+                    long bytes = SegmentWriter.payloadBytes(chunk);
+                    if (vectors.size() > 0 && full(vectors.size() + 1, payloadBytes + bytes)) {
+                        merged.add(LiveSegment.of(VectorSegment.open(writeSegment(vectors, payloads))));
+                        vectors = new PagedFloatVectors(dim);
+                        payloads = new ArrayList<>();
+                        payloadBytes = 0;
+                    }
+                    segment.vectors().copyTo(ord, scratch);
+                    vectors.add(scratch);
+                    payloads.add(chunk);
+                    payloadBytes += bytes;
+                }
+                obsolete.add(dir.resolve(segment.name()));
+                if (input.deletesFile() != null) {
+                    obsolete.add(dir.resolve(input.deletesFile()));
+                }
+            }
+            if (vectors.size() > 0) {
+                merged.add(LiveSegment.of(VectorSegment.open(writeSegment(vectors, payloads))));
+            }
+            return merged;
+        }
+    }
+
+    /** Merge tier of a segment with {@code liveChunks} live chunks; see {@link Ingestion#mergeTiers}. */
+    static int tier(int liveChunks, int mergeFactor) {
+        int tier = 0;
+        for (long bound = MERGE_FLOOR_CHUNKS; liveChunks >= bound; bound *= mergeFactor) {
+            tier++;
+        }
+        return tier;
+    }
+
+    private static DocIdBitmap toBitmap(List<Integer> ords) {
+        int[] values = new int[ords.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ords.get(i);
+        }
+        return DocIdBitmap.of(values, values.length);
+    }
+
+    /** Writes {@code deleted} to {@code file} under a temporary name, forced to disk and atomically renamed. */
+    private static void writeDeletes(Path file, DocIdBitmap deleted) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ChannelOutput out = new ChannelOutput(ch, 0);
+            deleted.writeTo(out);
+            out.flush();
+            ch.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static DocIdBitmap readDeletes(Path file, int segmentSize) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        DocIdBitmap deleted;
+        try {
+            deleted = DocIdBitmap.read(in, 0);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt deletes file " + file, e);
+        }
+        int[] ords = deleted.toArray();
+        if (ords.length == 0 || ords.length >= segmentSize || ords[ords.length - 1] >= segmentSize) {
+            throw new IOException("Corrupt deletes file " + file);
+        }
+        return deleted;
+    }
+
+    /** {@code snapshot} must be non-empty. */
+    private static float[] prepare(List<LiveSegment> snapshot, float[] query) {
+        VectorSegment first = snapshot.get(0).segment();
+        if (query.length != first.dimension()) {
+            throw new IllegalArgumentException("query dimension " + query.length + " != index dimension " + first.dimension());
+        }
+        return first.similarity().prepare(query);
+    }
+
+    /**
+     * Per-segment (index-aligned) bitmaps of the live chunks matching {@code filter}, or null when unfiltered and
+     * nothing is deleted.
+     */
+    private static DocIdBitmap[] accept(List<LiveSegment> snapshot, MetadataFilter filter) {
+        DocIdBitmap[] accept = new DocIdBitmap[snapshot.size()];
+        boolean any = false;
+        for (int i = 0; i < accept.length; i++) {
+            LiveSegment s = snapshot.get(i);
+            DocIdBitmap bits = filter != null ? filter.evaluate(s.segment().filter()) : null;
+            if (s.live() != null) {
+                bits = bits != null ? bits.and(s.live()) : s.live();
+            }
+            accept[i] = bits;
+            any |= bits != null;
+        }
+        return any ? accept : null;
+    }
+
+    /**
+     * Runs {@code perSegment} on every segment with its accept bitmap (null when every chunk is accepted) and
+     * returns all hits sorted best-first. Segments whose bitmap is empty are skipped.
+     */
+    private static List<Hit> collect(List<LiveSegment> snapshot, DocIdBitmap[] accept,
+                                     BiFunction<VectorSegment, DocIdBitmap, NeighborQueue> perSegment) {
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            VectorSegment segment = snapshot.get(i).segment();
+            DocIdBitmap bits = accept != null ? accept[i] : null;
+            if (bits != null && bits.cardinality() == 0) {
+                continue;
+            }
+            NeighborQueue found = perSegment.apply(segment, bits);
+            while (!found.isEmpty()) {
+                float score = found.topScore();
+                hits.add(new Hit(segment, found.pop(), score));
+            }
+        }
+        hits.sort((a, b) -> Float.compare(b.score(), a.score()));
+        return hits;
+    }
+
+    private static List<Hit> top(List<Hit> hits, int limit) {
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    /** Id of a segment or deletes file name ({@code seg-<id>.vseg} / {@code seg-<id>.del}); ids never repeat in a shard. */
+    private static long fileId(String name) {
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.indexOf('.')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
@@ -24,14 +24,45 @@ import com.openllmorchestrator.worker.contract.CapabilityHandler;
 import com.openllmorchestrator.worker.contract.CapabilityResult;
 
 import com.openllmorchestrator.olo.OloPlugin;
+import com.openllmorchestrator.olo.PluginDataPaths;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-/** Vector DB plugin: store chunks (doc pipeline) or retrieve (question pipeline). */
+/**
+ * Vector DB plugin: store chunks (doc pipeline) or retrieve (question pipeline).
+ * <p>
+ * Chunks are held in in-process HNSW indexes ({@link HnswIndex}) persisted as immutable, memory-mapped
+ * segment files under the plugin data dir (OLO_PLUGIN_DATA_DIR/com.openllm.plugin.vectordb/collections/&lt;name&gt;,
+ * "default" unless the input names one), so a restarted worker maps its index instead of
+ * re-ingesting; no external vector database is called. Each collection is split into shards with their own locks,
+ * searched in parallel ({@link VectorCollection}). A chunk's "embedding" (float[] or number list) is used when
+ * present, and "questionEmbedding" likewise for queries; otherwise a local hashing embedder is used. Chunks
+ * without an embedding are rejected by a collection of model embeddings of another dimension (typically the
+ * embedding step failed), and a query whose vector does not match the collection is answered by BM25 alone,
+ * reported in "retrievalWarning".
+ * Each segment also holds a BM25 inverted index over the chunk text; by default retrieval fuses the vector
+ * and BM25 rankings with reciprocal rank fusion so exact identifiers (error codes, SKUs) are found too.
+ * Segments can store int8 (4x smaller) or product-quantized (16x by default) codes next to the floats; the
+ * graph is then searched on the codes and the top candidates reranked with exact float scores.
+ * Retrieval can be restricted by path prefix, file extension and indexed metadata fields (e.g. tenant); the
+ * filter is resolved to a bitmap per segment and applied inside the graph and BM25 searches, not afterwards.
+ * Env: VECTORDB_TOP_K, VECTORDB_HNSW_M, VECTORDB_HNSW_EF_CONSTRUCTION, VECTORDB_HNSW_EF_SEARCH,
+ * VECTORDB_SIMILARITY (cosine | dot | l2), VECTORDB_HASH_DIMENSION, VECTORDB_QUANTIZATION (none | int8 | pq),
+ * VECTORDB_RERANK_FACTOR, VECTORDB_PQ_SUBSPACES, VECTORDB_EMBED_BATCH_SIZE, VECTORDB_BUILD_THREADS,
+ * VECTORDB_SEGMENT_MAX_CHUNKS, VECTORDB_MERGE_FACTOR, VECTORDB_RETRIEVAL_MODE (hybrid | vector | lexical), VECTORDB_FUSION_DEPTH, VECTORDB_RRF_K,
+ * VECTORDB_FILTER_FIELDS (comma-separated metadata fields indexed for filtering), VECTORDB_SHARDS.
+ */
 @OloPlugin(
     id = "com.openllm.plugin.vectordb",
     name = "Vector Store Retrieval",
@@ -40,18 +71,83 @@ import java.util.Set;
     capability = { "VECTOR_STORE" },
     inputs = {
         @OloPlugin.Input(name = "question", type = "string", required = false, description = "User question for retrieval"),
-        @OloPlugin.Input(name = "tokenizedChunks", type = "array", required = false, description = "Chunks to store from tokenizer")
+        @OloPlugin.Input(name = "tokenizedChunks", type = "array", required = false, description = "Chunks to store from tokenizer"),
+        @OloPlugin.Input(name = "questionEmbedding", type = "array", required = false, description = "Precomputed question vector (optional)"),
+        @OloPlugin.Input(name = "topK", type = "integer", required = false, description = "Number of chunks to retrieve (default 5)"),
+        @OloPlugin.Input(name = "efSearch", type = "integer", required = false, description = "HNSW search beam width (default 64)"),
+        @OloPlugin.Input(name = "hnswM", type = "integer", required = false, description = "HNSW links per node; applied when the index is created (default 16)"),
+        @OloPlugin.Input(name = "efConstruction", type = "integer", required = false, description = "HNSW build beam width; applied when the index is created (default 200)"),
+        @OloPlugin.Input(name = "retrievalMode", type = "string", required = false, description = "hybrid | vector | lexical (default hybrid)"),
+        @OloPlugin.Input(name = "quantization", type = "string", required = false, description = "none | int8 | pq for newly stored chunks (default none)"),
+        @OloPlugin.Input(name = "rerankFactor", type = "integer", required = false, description = "Quantized candidates per result reranked on float vectors (default 4)"),
+        @OloPlugin.Input(name = "batchSize", type = "integer", required = false, description = "Chunks embedded per ingestion batch (default 256)"),
+        @OloPlugin.Input(name = "measureRecall", type = "boolean", required = false, description = "Also compute recallAtK against an exact scan"),
+        @OloPlugin.Input(name = "filter", type = "object", required = false, description = "Retrieval filter: pathPrefix, extension and indexed metadata fields (string or list each)"),
+        @OloPlugin.Input(name = "tenant", type = "string", required = false, description = "Tenant stamped on stored chunks lacking one; restricts retrieval to that tenant"),
+        @OloPlugin.Input(name = "collection", type = "string", required = false, description = "Named collection to store into / retrieve from (default \"default\")")
     },
     outputs = {
         @OloPlugin.Output(name = "retrievedChunks", type = "array", description = "Retrieved chunks for RAG"),
         @OloPlugin.Output(name = "stored", type = "boolean", description = "True if chunks were stored"),
-        @OloPlugin.Output(name = "chunkCount", type = "integer", description = "Number of chunks stored")
+        @OloPlugin.Output(name = "chunkCount", type = "integer", description = "Number of chunks stored"),
+        @OloPlugin.Output(name = "batchCount", type = "integer", description = "Ingestion batches processed when storing"),
+        @OloPlugin.Output(name = "chunksPerSecond", type = "number", description = "Ingestion throughput (embed, build, write, publish)"),
+        @OloPlugin.Output(name = "recallAtK", type = "number", description = "Fraction of the exact top-k returned (only with measureRecall)"),
+        @OloPlugin.Output(name = "searchMillis", type = "number", description = "Latency of this retrieval"),
+        @OloPlugin.Output(name = "retrievalWarning", type = "string", description = "Why retrieval fell back to lexical (BM25) only, e.g. a question embedding that does not match the index dimension"),
+        @OloPlugin.Output(name = "searchP99Millis", type = "number", description = "99th percentile retrieval latency of the collection since worker start")
     }
 )
 public final class VectorStoreRetrievalPlugin implements CapabilityHandler, ContractCompatibility, PlannerInputDescriptor, PluginTypeDescriptor {
 
     private static final String CONTRACT_VERSION = "0.0.1";
     public static final String NAME = "com.openllmorchestrator.worker.plugin.vectordb.VectorStoreRetrievalPlugin";
+    /** Plugin id for the shared plugin data dir where segment files live. */
+    private static final String PLUGIN_ID = "com.openllm.plugin.vectordb";
+    /** Chunk keys that are stored as dedicated payload fields rather than metadata. */
+    private static final Set<String> RESERVED_CHUNK_KEYS = Set.of("text", "content", "path", "index", "embedding", "score");
+
+    private static final int DEFAULT_TOP_K = getIntEnv("VECTORDB_TOP_K", 5);
+    private static final int DEFAULT_M = getIntEnv("VECTORDB_HNSW_M", 16);
+    private static final int DEFAULT_EF_CONSTRUCTION = getIntEnv("VECTORDB_HNSW_EF_CONSTRUCTION", 200);
+    private static final int DEFAULT_EF_SEARCH = getIntEnv("VECTORDB_HNSW_EF_SEARCH", 64);
+    private static final VectorSimilarity SIMILARITY = VectorSimilarity.parse(getEnv("VECTORDB_SIMILARITY", "cosine"), VectorSimilarity.COSINE);
+    private static final VectorQuantizer.Mode QUANTIZATION =
+            VectorQuantizer.Mode.parse(getEnv("VECTORDB_QUANTIZATION", "none"), VectorQuantizer.Mode.NONE);
+    private static final int DEFAULT_RERANK_FACTOR = getIntEnv("VECTORDB_RERANK_FACTOR", 4);
+    private static final int PQ_SUBSPACES = getIntEnv("VECTORDB_PQ_SUBSPACES", 0);
+    private static final RetrievalMode RETRIEVAL_MODE =
+            RetrievalMode.parse(getEnv("VECTORDB_RETRIEVAL_MODE", "hybrid"), RetrievalMode.HYBRID);
+    private static final int FUSION_DEPTH = getIntEnv("VECTORDB_FUSION_DEPTH", 50);
+    private static final int RRF_K = getIntEnv("VECTORDB_RRF_K", 60);
+    private static final int DEFAULT_BATCH_SIZE = getIntEnv("VECTORDB_EMBED_BATCH_SIZE", 256);
+    private static final int BUILD_THREADS = getIntEnv("VECTORDB_BUILD_THREADS", Runtime.getRuntime().availableProcessors());
+    private static final int SEGMENT_MAX_CHUNKS = getIntEnv("VECTORDB_SEGMENT_MAX_CHUNKS", 250_000);
+    private static final int MERGE_FACTOR = getIntEnv("VECTORDB_MERGE_FACTOR", 10);
+    private static final String TENANT_FIELD = StoredChunk.TENANT;
+    /** Metadata fields indexed for filtering in new segments; path and extension always are. */
+    private static final Set<String> FILTER_FIELDS = Arrays.stream(getEnv("VECTORDB_FILTER_FIELDS", TENANT_FIELD).split(","))
+            .map(String::trim).filter(f -> !f.isEmpty()).collect(Collectors.toUnmodifiableSet());
+    private static final HashingEmbedder FALLBACK_EMBEDDER = new HashingEmbedder(getIntEnv("VECTORDB_HASH_DIMENSION", 384));
+    /** Shards of a newly created collection; existing collections keep the count they were created with. */
+    private static final int SHARDS = getIntEnv("VECTORDB_SHARDS", Math.min(4, Runtime.getRuntime().availableProcessors()));
+    /** Open collections by name, shared across pipeline runs so stored chunks are visible to later retrievals. */
+    private static final ConcurrentMap<String, VectorCollection> COLLECTIONS = new ConcurrentHashMap<>();
+
+    private static String getEnv(String key, String defaultValue) {
+        String v = System.getenv(key);
+        if (v != null && !v.isBlank()) return v.trim();
+        return System.getProperty(key, defaultValue);
+    }
+
+    private static int getIntEnv(String key, int defaultValue) {
+        try {
+            int v = Integer.parseInt(getEnv(key, String.valueOf(defaultValue)));
+            return v > 0 ? v : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
 
     @Override
     public String name() {
@@ -65,14 +161,56 @@ public final class VectorStoreRetrievalPlugin implements CapabilityHandler, Cont
 
         Object chunksObj = accumulated != null ? accumulated.get("tokenizedChunks") : null;
         if (chunksObj instanceof List && !((List<?>) chunksObj).isEmpty()) {
-            context.putOutput("stored", true);
-            context.putOutput("chunkCount", ((List<?>) chunksObj).size());
+            try {
+                IngestReport report = storeInVectorDb((List<?>) chunksObj, input);
+                context.putOutput("stored", report.stored() > 0);
+                context.putOutput("chunkCount", report.stored());
+                context.putOutput("batchCount", report.batchCount());
+                context.putOutput("chunksPerSecond", report.chunksPerSecond());
+            } catch (IOException | IllegalArgumentException e) {
+                context.putOutput("error", "Failed to store chunks: " + e.getMessage());
+                context.putOutput("stored", false);
+                context.putOutput("chunkCount", 0);
+            }
             return CapabilityResult.builder().capabilityName(NAME).data(new HashMap<>(context.getCurrentPluginOutput())).build();
         }
 
         String question = input != null ? (String) input.get("question") : null;
         if (question != null && !question.isBlank()) {
-            context.putOutput("retrievedChunks", retrieveFromVectorDb(question));
+            Object embeddingObj = accumulated != null ? accumulated.get("questionEmbedding") : null;
+            if (embeddingObj == null && input != null) {
+                embeddingObj = input.get("questionEmbedding");
+            }
+            try {
+                float[] embedded = toVector(embeddingObj);
+                float[] query = embedded != null ? embedded : FALLBACK_EMBEDDER.embed(question);
+                int topK = intInput(input, "topK", DEFAULT_TOP_K);
+                int efSearch = intInput(input, "efSearch", DEFAULT_EF_SEARCH);
+                int rerankFactor = intInput(input, "rerankFactor", DEFAULT_RERANK_FACTOR);
+                Object modeObj = input != null ? input.get("retrievalMode") : null;
+                RetrievalMode mode = modeObj != null ? RetrievalMode.parse(modeObj.toString(), RETRIEVAL_MODE) : RETRIEVAL_MODE;
+                VectorCollection collection = collection(input);
+                int indexDimension = collection.dimension();
+                if (mode != RetrievalMode.LEXICAL && indexDimension >= 0 && query.length != indexDimension) {
+                    // E.g. the embedding step failed and left no questionEmbedding: BM25 can still answer.
+                    context.putOutput("retrievalWarning", (embedded != null ? "questionEmbedding" : "hashing-embedder query (no questionEmbedding)")
+                            + " has dimension " + query.length + " but collection '" + collection.name() + "' has " + indexDimension
+                            + "; retrieved with lexical (BM25) search only");
+                    mode = RetrievalMode.LEXICAL;
+                }
+                SearchRequest request = new SearchRequest(query, question, topK, efSearch, rerankFactor, mode,
+                        FUSION_DEPTH, RRF_K, filterInput(input));
+                long searchStart = System.nanoTime();
+                context.putOutput("retrievedChunks", collection.search(request));
+                context.putOutput("searchMillis", Math.round((System.nanoTime() - searchStart) / 1e4) / 100.0);
+                context.putOutput("searchP99Millis", collection.searchLatency().percentileMillis(99));
+                if (mode != RetrievalMode.LEXICAL && input != null && Boolean.parseBoolean(String.valueOf(input.get("measureRecall")))) {
+                    context.putOutput("recallAtK", collection.recall(request));
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                context.putOutput("error", "Failed to retrieve chunks: " + e.getMessage());
+                context.putOutput("retrievedChunks", new ArrayList<>());
+            }
         }
 
         return CapabilityResult.builder().capabilityName(NAME).data(new HashMap<>(context.getCurrentPluginOutput())).build();
@@ -90,7 +228,7 @@ public final class VectorStoreRetrievalPlugin implements CapabilityHandler, Cont
 
     @Override
     public String getPlannerDescription() {
-        return "Vector store: store tokenizedChunks or retrieve chunks by question.";
+        return "Vector store: store tokenizedChunks in an in-process HNSW + BM25 index or retrieve topK chunks by question.";
     }
 
     @Override
@@ -98,7 +236,155 @@ public final class VectorStoreRetrievalPlugin implements CapabilityHandler, Cont
         return PluginTypes.VECTOR_STORE;
     }
 
-    private List<Map<String, Object>> retrieveFromVectorDb(String question) {
-        return new ArrayList<>();
+    /**
+     * Ingests chunks in batches of {@code batchSize}: each batch is embedded in parallel (chunks without an
+     * "embedding" go through the hashing embedder) and staged; graphs are linked on all build threads and the
+     * resulting segments are published together once every batch is in.
+     */
+    private IngestReport storeInVectorDb(List<?> chunks, Map<String, Object> input) throws IOException {
+        long start = System.nanoTime();
+        int batchSize = intInput(input, "batchSize", DEFAULT_BATCH_SIZE);
+        Object quantization = input != null ? input.get("quantization") : null;
+        IndexSettings settings = new IndexSettings(SIMILARITY,
+                intInput(input, "hnswM", DEFAULT_M), intInput(input, "efConstruction", DEFAULT_EF_CONSTRUCTION),
+                quantization != null ? VectorQuantizer.Mode.parse(quantization.toString(), QUANTIZATION) : QUANTIZATION,
+                PQ_SUBSPACES, BUILD_THREADS, SEGMENT_MAX_CHUNKS, MERGE_FACTOR, FILTER_FIELDS);
+        Object tenant = input != null ? input.get(TENANT_FIELD) : null;
+        int batchCount = 0;
+        int stored;
+        VectorCollection collection = collection(input);
+        try (VectorCollection.Ingestion ingestion = collection.ingest(settings)) {
+            for (int from = 0; from < chunks.size(); from += batchSize) {
+                List<?> batch = chunks.subList(from, Math.min(chunks.size(), from + batchSize));
+                List<StoredChunk> payloads = new ArrayList<>(batch.size());
+                List<Object> embeddings = new ArrayList<>(batch.size());
+                for (Object c : batch) {
+                    if (!(c instanceof Map<?, ?> chunk)) continue;
+                    StoredChunk payload = toStoredChunk(chunk, tenant);
+                    if (payload == null) continue;
+                    payloads.add(payload);
+                    embeddings.add(chunk.get("embedding"));
+                }
+                float[][] vectors = new float[payloads.size()][];
+                int hashed = 0;
+                int modelDimension = ingestion.dimension();
+                for (int i = 0; i < vectors.length; i++) {
+                    vectors[i] = toVector(embeddings.get(i));
+                    if (vectors[i] == null) hashed++;
+                    else if (modelDimension < 0) modelDimension = vectors[i].length;
+                }
+                if (hashed > 0 && modelDimension >= 0 && modelDimension != FALLBACK_EMBEDDER.dimension()) {
+                    throw new IllegalArgumentException(hashed + " chunks have no \"embedding\" (did the embedding step fail?), but collection '"
+                            + collection.name() + "' holds " + modelDimension + "-dimensional model embeddings; the "
+                            + FALLBACK_EMBEDDER.dimension() + "-dimensional hashing embedder cannot be mixed with them");
+                }
+                IntStream.range(0, vectors.length).parallel().forEach(i -> {
+                    if (vectors[i] == null) vectors[i] = FALLBACK_EMBEDDER.embed(payloads.get(i).text());
+                });
+                ingestion.add(Arrays.asList(vectors), payloads);
+                batchCount++;
+            }
+            stored = ingestion.commit();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new IngestReport(stored, batchCount, seconds > 0 ? Math.round(stored / seconds * 10) / 10.0 : 0.0);
+    }
+
+    /**
+     * Text, path, index and scalar extra fields of a tokenizer chunk; null when the chunk has no text.
+     * {@code tenant} (may be null) is recorded for chunks that do not carry their own.
+     */
+    private static StoredChunk toStoredChunk(Map<?, ?> chunk, Object tenant) {
+        Object textObj = chunk.get("text") != null ? chunk.get("text") : chunk.get("content");
+        if (textObj == null) return null;
+        Object path = chunk.get("path");
+        Object index = chunk.get("index");
+        Map<String, String> metadata = new HashMap<>();
+        for (Map.Entry<?, ?> e : chunk.entrySet()) {
+            Object v = e.getValue();
+            if (e.getKey() instanceof String key && !RESERVED_CHUNK_KEYS.contains(key)
+                    && (v instanceof String || v instanceof Number || v instanceof Boolean)) {
+                metadata.put(key, v.toString());
+            }
+        }
+        if (tenant != null && !tenant.toString().isBlank()) {
+            metadata.putIfAbsent(TENANT_FIELD, tenant.toString());
+        }
+        return new StoredChunk(textObj.toString(), path != null ? path.toString() : null,
+                index instanceof Number ? ((Number) index).intValue() : -1, metadata);
+    }
+
+    /** The collection named by the "collection" input, opened on first use. */
+    private static VectorCollection collection(Map<String, Object> input) throws IOException {
+        Object nameObj = input != null ? input.get("collection") : null;
+        String name = nameObj != null && !nameObj.toString().isBlank() ? nameObj.toString().trim() : VectorCollection.DEFAULT;
+        VectorCollection collection = COLLECTIONS.get(name);
+        if (collection != null) {
+            return collection;
+        }
+        synchronized (COLLECTIONS) {
+            collection = COLLECTIONS.get(name);
+            if (collection == null) {
+                Path dir = PluginDataPaths.getPluginDir(PLUGIN_ID).resolve("collections").resolve(name);
+                collection = VectorCollection.open(name, dir, SHARDS);
+                COLLECTIONS.put(name, collection);
+            }
+            return collection;
+        }
+    }
+
+    /** The "filter" input, narrowed to the "tenant" input when one is given; null when unfiltered. */
+    private static MetadataFilter filterInput(Map<String, Object> input) {
+        if (input == null) {
+            return null;
+        }
+        Map<Object, Object> spec = new HashMap<>();
+        if (input.get("filter") instanceof Map<?, ?> filter) {
+            spec.putAll(filter);
+        }
+        Object tenant = input.get(TENANT_FIELD);
+        if (tenant != null && !tenant.toString().isBlank()) {
+            spec.putIfAbsent(TENANT_FIELD, tenant.toString());
+        }
+        return MetadataFilter.from(spec);
+    }
+
+    private record IngestReport(int stored, int batchCount, double chunksPerSecond) {}
+
+    /** Accepts float[], double[] or a list of numbers (e.g. JSON array); returns null for anything else. */
+    static float[] toVector(Object obj) {
+        if (obj instanceof float[] f) {
+            return f;
+        }
+        if (obj instanceof double[] d) {
+            float[] out = new float[d.length];
+            for (int i = 0; i < d.length; i++) out[i] = (float) d[i];
+            return out;
+        }
+        if (obj instanceof List<?> list && !list.isEmpty()) {
+            float[] out = new float[list.size()];
+            for (int i = 0; i < out.length; i++) {
+                if (!(list.get(i) instanceof Number n)) return null;
+                out[i] = n.floatValue();
+            }
+            return out;
+        }
+        return null;
+    }
+
+    private static int intInput(Map<String, Object> input, String key, int defaultValue) {
+        Object v = input != null ? input.get(key) : null;
+        if (v instanceof Number n && n.intValue() > 0) {
+            return n.intValue();
+        }
+        if (v instanceof String s && !s.isBlank()) {
+            try {
+                int parsed = Integer.parseInt(s.trim());
+                return parsed > 0 ? parsed : defaultValue;
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
     }
 }
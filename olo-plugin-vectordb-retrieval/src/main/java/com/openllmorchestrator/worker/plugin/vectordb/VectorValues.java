@@ -0,0 +1,36 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+/**
+ * Random access to stored vectors by ordinal. Scoring happens against the backing storage
+ * directly so implementations over mapped files never copy vectors onto the heap.
+ */
+interface VectorValues {
+
+    int size();
+
+    int dimension();
+
+    /** Scores {@code query} (already prepared for {@code similarity}) against stored vector {@code ord}. */
+    float score(VectorSimilarity similarity, float[] query, int ord);
+
+    /** Scores two stored vectors against each other. */
+    float score(VectorSimilarity similarity, int a, int b);
+
+    /** Copies vector {@code ord} into {@code dst} (length {@link #dimension()}). */
+    void copyTo(int ord, float[] dst);
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2026 Open LLM Orchestrator contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.openllmorchestrator.worker.plugin.vectordb;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Query latency while a writer commits small ingestions back to back, as ASYNC pipelines do when retrievals
+ * run during a folder ingestion. Readers search without locking; the test checks that size-tiered merging
+ * keeps the segment count, and with it p99 latency, bounded however many commits land.
+ * <p>
+ * Run with {@code gradle stressTest}. {@code -Dvectordb.stress.seconds} sets the load duration and
+ * {@code -Dvectordb.stress.p99Millis} the p99 bound, which is generous so slow CI machines pass.
+ */
+@Tag("stress")
+class VectorStoreStressTest {
+
+    private static final int DIMENSION = 64;
+    private static final int SHARDS = 2;
+    private static final int SEED_DOCUMENTS = 500;
+    private static final int CHUNKS_PER_DOCUMENT = 10;
+    private static final int DOCUMENTS_PER_COMMIT = 5;
+    private static final int READERS = 4;
+    private static final int MERGE_FACTOR = 10;
+    private static final long SECONDS = Long.getLong("vectordb.stress.seconds", 15);
+    private static final double MAX_P99_MILLIS = Double.parseDouble(System.getProperty("vectordb.stress.p99Millis", "100"));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void queryLatencyStaysBoundedUnderSustainedInserts() throws Exception {
+        VectorCollection collection = VectorCollection.open("stress", dir, SHARDS);
+        Random random = new Random(42);
+        int documents = 0;
+        for (; documents < SEED_DOCUMENTS; documents += 50) {
+            ingest(collection, random, documents, 50);
+        }
+        LatencyHistogram idle = query(collection, 3, () -> {});
+
+        int[] commits = new int[1];
+        int[] storedDocuments = {documents};
+        LatencyHistogram loaded = query(collection, SECONDS, () -> {
+            // Every fourth commit re-ingests stored documents, so deletes and compaction run as well.
+            int first = commits[0] % 4 == 3 ? random.nextInt(storedDocuments[0] - DOCUMENTS_PER_COMMIT) : storedDocuments[0];
+            ingest(collection, random, first, DOCUMENTS_PER_COMMIT);
+            storedDocuments[0] = Math.max(storedDocuments[0], first + DOCUMENTS_PER_COMMIT);
+            commits[0]++;
+        });
+
+        Map<String, Integer> segmentsPerShard = new HashMap<>();
+        for (String entry : Manifest.read(dir.resolve(VectorCollection.MANIFEST))) {
+            segmentsPerShard.merge(entry.substring(0, entry.indexOf('/')), 1, Integer::sum);
+        }
+        int size = collection.size();
+        int maxSegments = (VectorStore.tier(size, MERGE_FACTOR) + 1) * (MERGE_FACTOR - 1);
+        System.out.printf("commits %d, chunks %d, segments per shard %s (bound %d)%n", commits[0], size, segmentsPerShard, maxSegments);
+        System.out.printf("idle p50 %.2f ms p99 %.2f ms; under inserts p50 %.2f ms p99 %.2f ms over %d queries%n",
+                idle.percentileMillis(50), idle.percentileMillis(99),
+                loaded.percentileMillis(50), loaded.percentileMillis(99), loaded.count());
+
+        assertTrue(commits[0] >= MERGE_FACTOR, "writer committed only " + commits[0] + " times");
+        assertEquals(storedDocuments[0] * CHUNKS_PER_DOCUMENT, size, "re-ingested chunks must replace the stored ones");
+        for (int segments : segmentsPerShard.values()) {
+            assertTrue(segments <= maxSegments, "segments per shard " + segmentsPerShard + " exceed " + maxSegments);
+        }
+        assertTrue(loaded.percentileMillis(99) <= MAX_P99_MILLIS,
+                "p99 " + loaded.percentileMillis(99) + " ms under inserts exceeds " + MAX_P99_MILLIS + " ms");
+    }
+
+    /**
+     * Runs {@link #READERS} query threads for {@code seconds} while the calling thread runs {@code writer} in a
+     * loop; returns their search latencies. Each query also checks that no chunk is returned twice.
+     */
+    private static LatencyHistogram query(VectorCollection collection, long seconds, Writer writer) throws Exception {
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            Random random = new Random(r);
+            readers.add(Thread.ofPlatform().name("stress-reader-" + r).start(() -> {
+                try {
+                    while (!stop.get()) {
+                        SearchRequest request = new SearchRequest(vector(random), null, 10, 64, 1, RetrievalMode.VECTOR,
+                                0, 60, null);
+                        long start = System.nanoTime();
+                        List<Map<String, Object>> hits = collection.search(request);
+                        latency.record(System.nanoTime() - start);
+                        Set<String> ids = new HashSet<>();
+                        for (Map<String, Object> hit : hits) {
+                            if (!ids.add(hit.get("path") + "#" + hit.get("index"))) {
+                                throw new AssertionError("duplicate hit " + hit.get("path") + "#" + hit.get("index"));
+                            }
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        try {
+            while (System.nanoTime() < end && failure.get() == null) {
+                writer.run();
+                Thread.sleep(1);
+            }
+        } finally {
+            stop.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        assertNull(failure.get(), () -> "reader failed: " + failure.get());
+        return latency;
+    }
+
+    private interface Writer {
+        void run() throws IOException;
+    }
+
+    /** Commits {@code count} documents of {@link #CHUNKS_PER_DOCUMENT} chunks, numbered from {@code first}. */
+    private static void ingest(VectorCollection collection, Random random, int first, int count) throws IOException {
+        IndexSettings settings = new IndexSettings(VectorSimilarity.COSINE, 16, 100, VectorQuantizer.Mode.NONE, 0, 2,
+                250_000, MERGE_FACTOR, Set.of(StoredChunk.TENANT));
+        List<float[]> vectors = new ArrayList<>();
+        List<StoredChunk> payloads = new ArrayList<>();
+        for (int d = first; d < first + count; d++) {
+            for (int c = 0; c < CHUNKS_PER_DOCUMENT; c++) {
+                vectors.add(vector(random));
+                payloads.add(new StoredChunk("chunk " + c + " of document " + d, "docs/doc-" + d + ".md", c, Map.of()));
+            }
+        }
+        try (VectorCollection.Ingestion ingestion = collection.ingest(settings)) {
+            ingestion.add(vectors, payloads);
+            ingestion.commit();
+        }
+    }
+
+    private static float[] vector(Random random) {
+        float[] v = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+}